@@ -32,6 +32,7 @@ import net.fabricmc.loom.task.RemapJarTask;
 import net.fabricmc.loom.task.RemapSourcesJarTask;
 import net.fabricmc.loom.transformers.DeobfTransformer;
 import net.fabricmc.loom.util.*;
+import net.fabricmc.loom.util.download.DownloadSources;
 import org.gradle.api.*;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
@@ -56,6 +57,7 @@ import org.gradle.util.GradleVersion;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -324,6 +326,14 @@ public class AbstractPlugin implements Plugin<Project> {
                 flatDirectoryArtifactRepository.setName("UserLocalRemappedMods");
             });
 
+            //Libraries are fetched and checked here by MinecraftLibraryProvider, in a Maven layout but without any POMs
+            //Prefetch bundles put whatever else Gradle needs here too, so it comes before any remote repository
+            project1.getRepositories().maven(mavenArtifactRepository -> {
+                mavenArtifactRepository.setName("MinecraftLibraries");
+                mavenArtifactRepository.setUrl(new File(extension.getUserCache(), "libraries"));
+                mavenArtifactRepository.metadataSources(MavenArtifactRepository.MetadataSources::artifact);
+            });
+
             project1.getRepositories().maven(mavenArtifactRepository -> {
                 mavenArtifactRepository.setName("Fabric");
                 mavenArtifactRepository.setUrl("https://maven.fabricmc.net/");
@@ -334,14 +344,34 @@ public class AbstractPlugin implements Plugin<Project> {
 				mavenArtifactRepository.setUrl("http://repo.spongepowered.org/maven");
 			}); */
 
+            DownloadSources sources = new DownloadSources(extension.mirrors, extension.sharedCache, extension.populateSharedCache);
+            List<String> libraryMirrors = sources.getMirrors(Constants.LIBRARIES_BASE);
+            for (int i = 0; i < libraryMirrors.size(); i++) {
+                String mirror = libraryMirrors.get(i);
+                addMavenRepo(project1, "Mojang Mirror " + (i + 1), mirror);
+            }
+
             project1.getRepositories().maven(mavenArtifactRepository -> {
                 mavenArtifactRepository.setName("Mojang");
-                mavenArtifactRepository.setUrl("https://libraries.minecraft.net/");
+                mavenArtifactRepository.setUrl(Constants.LIBRARIES_BASE);
             });
 
             project1.getRepositories().mavenCentral();
             project1.getRepositories().jcenter();
 
+            DownloadUtil.configureForBuild(project1, sources);
+
+            //A bundle can also be given on the command line, so CI can use one without changing the build script
+            Object bundleProperty = project1.findProperty("loom.prefetchBundle");
+            File prefetchBundle = bundleProperty != null ? project1.file(bundleProperty) : extension.prefetchBundle;
+            if (prefetchBundle != null) {
+                try {
+                    PrefetchBundle.importBundle(prefetchBundle, extension.getUserCache(), project1.getLogger());
+                } catch (IOException e) {
+                    throw new GradleException("Failed to import prefetch bundle " + prefetchBundle, e);
+                }
+            }
+
             LoomDependencyManager dependencyManager = new LoomDependencyManager();
             extension.setDependencyManager(dependencyManager);
 
@@ -28,9 +28,12 @@ import com.google.gson.JsonObject;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
+import net.fabricmc.loom.util.ChecksumIndex;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.JarCompression;
+import net.fabricmc.loom.util.LauncherFiles;
 import net.fabricmc.loom.util.LoomDependencyManager;
-import org.cadixdev.lorenz.MappingSet;
-import org.cadixdev.mercury.Mercury;
+import net.fabricmc.loom.util.download.DownloadMetadata;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.UnknownDomainObjectException;
@@ -45,9 +48,9 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 public class LoomGradleExtension {
 	public String runDir = "run";
@@ -56,6 +59,32 @@ public class LoomGradleExtension {
 	public boolean remapMod = true;
 	public boolean autoGenIDERuns = true;
 	public boolean extractJars = false;
+	public int downloadThreads = Math.max(4, Math.min(16, Runtime.getRuntime().availableProcessors() * 2));
+	public int maxConnectionsPerHost = 16;
+	/** How long to wait for a connection, and then for more data once connected, in milliseconds */
+	public int connectTimeout = 10_000, readTimeout = 30_000;
+	public int downloadRetries = 3;
+	/** The percentile of a host's response times past which a duplicate request is sent, anything outside (0, 1) turns this off */
+	public double hedgePercentile = 0.95;
+	public boolean verifyAssets = false;
+	/** How long the version manifest is trusted before checking it for new versions, in milliseconds */
+	public long versionManifestTtl = TimeUnit.HOURS.toMillis(1);
+	/** Whether sounds and music are left to download in the background once everything else needed to start the game is present */
+	public boolean backgroundAssets = false;
+	/** Whether to use matching files from an official launcher installation rather than downloading them again */
+	public boolean reuseLauncherFiles = true;
+	public List<File> launcherDirectories = new ArrayList<>(LauncherFiles.getDefaultDirectories());
+	/** Upstream base URLs (such as {@link Constants#RESOURCES_BASE}) mapped to the mirrors to try first for them, in order */
+	public Map<String, List<String>> mirrors = new LinkedHashMap<>();
+	/** A directory or URL holding files named by their SHA-1 hash, to be checked before downloading anything with a known hash */
+	public String sharedCache;
+	public boolean populateSharedCache = false;
+	/** A bundle made by the loomPrefetch task to import into the user cache before anything is downloaded */
+	public File prefetchBundle;
+	/** How much to compress each kind of jar Loom writes */
+	public final JarCompression compression = new JarCompression();
+	/** Roughly how many bytes of the heap can be spent keeping mappings loaded for the rest of the build */
+	public long mappingsMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
 
 	Attribute debofAttribute;
 
@@ -66,19 +95,17 @@ public class LoomGradleExtension {
 	private LoomDependencyManager dependencyManager;
 	private JsonObject installerJson;
 	private int installerJsonPriority = Integer.MAX_VALUE; // 0+, higher = less prioritized
-	private MappingSet[] srcMappingCache = new MappingSet[2];
-	private Mercury[] srcMercuryCache = new Mercury[2];
 
-	public MappingSet getOrCreateSrcMappingCache(int id, Supplier<MappingSet> factory) {
-		return srcMappingCache[id] != null ? srcMappingCache[id] : (srcMappingCache[id] = factory.get());
+	public LoomGradleExtension(Project project) {
+		this.project = project;
 	}
 
-	public Mercury getOrCreateSrcMercuryCache(int id, Supplier<Mercury> factory) {
-		return srcMercuryCache[id] != null ? srcMercuryCache[id] : (srcMercuryCache[id] = factory.get());
+	public void compression(Action<JarCompression> action) {
+		action.execute(compression);
 	}
 
-	public LoomGradleExtension(Project project) {
-		this.project = project;
+	public void mirror(String upstream, String... bases) {
+		mirrors.computeIfAbsent(upstream, k -> new ArrayList<>()).addAll(Arrays.asList(bases));
 	}
 
 	public void addUnmappedMod(Path file) {
@@ -100,11 +127,17 @@ public class LoomGradleExtension {
 	    return installerJson;
     }
 
+	public LauncherFiles getLauncherFiles() {
+		return new LauncherFiles(reuseLauncherFiles ? launcherDirectories : Collections.emptyList());
+	}
+
 	public File getUserCache() {
 		File userCache = new File(project.getGradle().getGradleUserHomeDir(), "caches" + File.separator + "fabric-loom");
 		if (!userCache.exists()) {
 			userCache.mkdirs();
 		}
+		ChecksumIndex.forRoot(userCache);
+		DownloadMetadata.forRoot(userCache);
 		return userCache;
 	}
 
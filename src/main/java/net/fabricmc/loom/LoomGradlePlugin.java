@@ -60,6 +60,12 @@ public class LoomGradlePlugin extends AbstractPlugin {
 		
 		tasks.register("cleanLoomBinaries", CleanLoomBinaries.class);
 		tasks.register("cleanLoomMappings", CleanLoomMappings.class);
+		tasks.register("verifyLoomCache", VerifyLoomCacheTask.class, t -> {
+			t.getOutputs().upToDateWhen((o) -> false);
+		});
+		tasks.register("loomPrefetch", PrefetchTask.class, t -> {
+			t.getOutputs().upToDateWhen((o) -> false);
+		});
 
 		tasks.register("migrateMappings", MigrateMappingsTask.class, t -> {
 			t.getOutputs().upToDateWhen((o) -> false);
@@ -27,19 +27,25 @@ package net.fabricmc.loom.providers;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DependencyProvider;
+import net.fabricmc.loom.util.BinaryMappings;
+import net.fabricmc.loom.util.FieldNameProposals;
+import net.fabricmc.loom.util.MappingsRegistry;
+import net.fabricmc.loom.util.MappingsSource;
+import net.fabricmc.loom.util.RemapperTables;
 import net.fabricmc.loom.util.Version;
 import net.fabricmc.mappings.Mappings;
-import net.fabricmc.stitch.commands.CommandProposeFieldNames;
+import net.fabricmc.tinyremapper.IMappingProvider;
 import org.gradle.api.Project;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.lang.ref.SoftReference;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.function.Consumer;
 
 //TODO fix local mappings
@@ -52,22 +58,24 @@ public class MappingsProvider extends DependencyProvider {
 	public String mappingsVersion;
 
 	public File MAPPINGS_DIR;
-	public File MAPPINGS_TINY_BASE;
 	public File MAPPINGS_TINY;
+	public File MAPPINGS_TINY_BINARY;
 	public File MAPPINGS_MIXIN_EXPORT;
 
-	private SoftReference<Mappings> mappings;
+	private MappingsRegistry registry;
 
 	public Mappings getMappings() throws IOException {
-		if (mappings == null || mappings.get() == null) {
-			try (FileInputStream stream = new FileInputStream(MAPPINGS_TINY)) {
-				mappings = new SoftReference<>(
-						net.fabricmc.mappings.MappingsProvider.readTinyMappings(stream, false)
-				);
-			}
-		}
-		
-		return mappings.get();
+		return registry.getMappings(MAPPINGS_TINY, MAPPINGS_TINY_BINARY);
+	}
+
+	/**
+	 * @return What to give TinyRemapper to remap between the given namespaces, only built from the mappings the first time
+	 */
+	public IMappingProvider getRemapperMappings(String from, String to) throws IOException {
+		File cache = new File(MAPPINGS_DIR, MAPPINGS_TINY.getName() + "-" + from + "-" + to + ".remap");
+
+		return registry.get("remapper:" + MAPPINGS_TINY.getAbsolutePath() + '@' + MAPPINGS_TINY.lastModified() + ':' + from + "->" + to, MAPPINGS_TINY.length(),
+				() -> RemapperTables.load(MAPPINGS_TINY, this::getMappings, from, to, cache));
 	}
 
 	@Override
@@ -91,25 +99,9 @@ public class MappingsProvider extends DependencyProvider {
 			MAPPINGS_DIR.mkdir();
 		}
 
-		if (!MAPPINGS_TINY_BASE.exists() || !MAPPINGS_TINY.exists()) {
-			if (!MAPPINGS_TINY_BASE.exists()) {
-				project.getLogger().lifecycle(":extracting " + mappingsJar.getName());
-				try (FileSystem fileSystem = FileSystems.newFileSystem(mappingsJar.toPath(), null)) {
-					Path fileToExtract = fileSystem.getPath("mappings/mappings.tiny");
-					Files.copy(fileToExtract, MAPPINGS_TINY_BASE.toPath());
-				}
-			}
-
-			if (MAPPINGS_TINY.exists()) {
-				MAPPINGS_TINY.delete();
-			}
-
+		if (!MAPPINGS_TINY.exists()) {
 			project.getLogger().lifecycle(":populating field names");
-			new CommandProposeFieldNames().run(new String[] {
-					minecraftProvider.MINECRAFT_MERGED_JAR.getAbsolutePath(),
-					MAPPINGS_TINY_BASE.getAbsolutePath(),
-					MAPPINGS_TINY.getAbsolutePath()
-			});
+			writeMappings(MappingsSource.fromJar(mappingsJar), minecraftProvider.MINECRAFT_MERGED_JAR, new File(extension.getUserCache(), "field-names"), project);
 		}
 
 		mappedProvider = new MinecraftMappedProvider();
@@ -117,12 +109,44 @@ public class MappingsProvider extends DependencyProvider {
 		mappedProvider.provide(dependency, project, extension, postPopulationScheduler);
 	}
 
+	/**
+	 * Write the given mappings with the proposed field names added as {@link #MAPPINGS_TINY}, along with its binary copy
+	 *
+	 * <p>The mappings are read straight out of the jar, and the binary copy made from the same text as is written rather than
+	 * reading it back again.
+	 */
+	private void writeMappings(MappingsSource base, File mergedJar, File fieldNameCache, Project project) throws IOException {
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(text, StandardCharsets.UTF_8)) {
+			//The names found only depend on the merged jar, so are kept between mappings builds
+			FieldNameProposals.propose(mergedJar, base, writer, fieldNameCache, project.getLogger());
+		}
+		byte[] tiny = text.toByteArray();
+
+		//Written to the side first, as a partly written file would otherwise be taken as complete next time
+		Path temp = MAPPINGS_TINY.toPath().resolveSibling(MAPPINGS_TINY.getName() + ".tmp");
+		try {
+			Files.write(temp, tiny);
+			Files.move(temp, MAPPINGS_TINY.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		try {
+			BinaryMappings.write(MappingsSource.load(tiny), MAPPINGS_TINY, MAPPINGS_TINY_BINARY);
+		} catch (IOException e) {
+			//It will be made from the text when it's first needed instead
+			project.getLogger().info("Unable to write binary mappings to " + MAPPINGS_TINY_BINARY, e);
+		}
+	}
+
 	public void initFiles(Project project) {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		registry = MappingsRegistry.get(project);
 		MAPPINGS_DIR = new File(extension.getUserCache(), "mappings");
 
-		MAPPINGS_TINY_BASE = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + "-" + mappingsVersion + "-base");
 		MAPPINGS_TINY = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + "-" + mappingsVersion);
+		MAPPINGS_TINY_BINARY = new File(MAPPINGS_DIR, MAPPINGS_TINY.getName() + ".bin");
 		MAPPINGS_MIXIN_EXPORT = new File(extension.getProjectBuildCache(), "mixin-map-" + minecraftVersion + "-" + mappingsVersion + ".tiny");
 	}
 
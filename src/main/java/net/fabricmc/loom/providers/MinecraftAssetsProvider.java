@@ -27,11 +27,16 @@ package net.fabricmc.loom.providers;
 import com.google.gson.Gson;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ChecksumIndex;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
+import net.fabricmc.loom.util.LauncherFiles;
 import net.fabricmc.loom.util.MinecraftVersionInfo;
 import net.fabricmc.loom.util.assets.AssetIndex;
 import net.fabricmc.loom.util.assets.AssetObject;
+import net.fabricmc.loom.util.download.DownloadExecutor;
+import net.fabricmc.loom.util.download.DownloadExecutor.DownloadException;
+import net.fabricmc.loom.util.download.DownloadStats;
 import net.fabricmc.loom.util.progress.ProgressLogger;
 
 import org.gradle.api.GradleException;
@@ -41,9 +46,20 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MinecraftAssetsProvider {
+	/** The asset indexes whose deferred assets are currently being downloaded in the background */
+	private static final Set<File> BACKGROUND = new HashSet<>();
+
 	public static void provide(MinecraftProvider minecraftProvider, Project project) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		boolean offline = project.getGradle().getStartParameter().isOffline();
@@ -69,47 +85,200 @@ public class MinecraftAssetsProvider {
 					throw new GradleException("Asset index not found at " + assetsInfo.getAbsolutePath());
 				}
 			} else {
-				DownloadUtil.downloadIfChanged(new URL(assetIndex.url), assetsInfo, project.getLogger());
+				DownloadUtil.downloadIfChanged(new URL(assetIndex.url), assetsInfo, assetIndex.sha1, project.getLogger(), false);
 			}
 		}
 
-		ProgressLogger progressLogger = ProgressLogger.getProgressFactory(project, MinecraftAssetsProvider.class.getName());
-		progressLogger.start("Downloading assets...", "assets");
+		//Skip going through every object if they've all been checked already and nothing has changed since
+		File verifiedMarker = new File(assetsInfo.getParentFile(), assetsInfo.getName() + ".verified");
+		if (!extension.verifyAssets && isMarkedVerified(verifiedMarker, assetsInfo)) {
+			project.getLogger().debug("All assets for " + assetIndex.getFabricId(minecraftProvider.minecraftVersion) + " previously verified");
+			return;
+		}
+		verifiedMarker.delete();
+
 		AssetIndex index;
 		try (FileReader fileReader = new FileReader(assetsInfo)) {
 			index = new Gson().fromJson(fileReader, AssetIndex.class);
 		}
-		Map<String, AssetObject> parent = index.getFileMap();
-		final int totalSize = parent.size();
-		int position = 0;
+
+		//The game can start without sounds and music, so everything else is fetched first
+		List<Map.Entry<String, AssetObject>> critical = new ArrayList<>();
+		List<Map.Entry<String, AssetObject>> deferred = new ArrayList<>();
+		Set<String> seenHashes = new HashSet<>();
+		//Several names can share the same object, only fetch it once and as early as any of them needs it
+		for (Map.Entry<String, AssetObject> entry : index.getFileMap().entrySet()) {
+			if (!isDeferrable(entry.getKey()) && seenHashes.add(entry.getValue().getHash())) critical.add(entry);
+		}
+		for (Map.Entry<String, AssetObject> entry : index.getFileMap().entrySet()) {
+			if (isDeferrable(entry.getKey()) && seenHashes.add(entry.getValue().getHash())) deferred.add(entry);
+		}
+
+		//Offline there's nothing to wait for, and anything missing should be reported before the build carries on
+		boolean background = extension.backgroundAssets && !offline && !deferred.isEmpty();
+		ProgressLogger progressLogger = ProgressLogger.getProgressFactory(project, MinecraftAssetsProvider.class.getName());
+		progressLogger.start("Downloading assets...", "assets");
+		AssetFetcher fetcher = new AssetFetcher(project, assets, extension.getLauncherFiles(), offline, extension.verifyAssets, progressLogger, background ? critical.size() : seenHashes.size());
 		project.getLogger().lifecycle(":downloading assets...");
-		for (Map.Entry<String, AssetObject> entry : parent.entrySet()) {
-			AssetObject object = entry.getValue();
-			String sha1 = object.getHash();
-			String filename = "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1;
-			File file = new File(assets, filename);
-
-			if (!file.exists() || !Checksum.equals(file, sha1)) {
-				if (offline) {
-					if (file.exists()) {
-						project.getLogger().warn("Outdated asset " + entry.getKey());
-					} else {
-						throw new GradleException("Asset " + entry.getKey() + " not found at " + file.getAbsolutePath());
-					}
-				} else {
-					project.getLogger().debug(":downloading asset " + entry.getKey());
-					DownloadUtil.downloadIfChanged(new URL(Constants.RESOURCES_BASE + sha1.substring(0, 2) + "/" + sha1), file, project.getLogger(), true);
-				}
+
+		try (DownloadExecutor executor = new DownloadExecutor(extension.downloadThreads)) {
+			fetcher.submit(executor, critical);
+			if (!background) fetcher.submit(executor, deferred);
+
+			executor.await();
+		} catch (DownloadException e) {
+			progressLogger.completed();
+			throw new GradleException("Failed to download assets: " + e.getMessage(), e);
+		} finally {
+			ChecksumIndex.saveAll();
+		}
+
+		progressLogger.completed();
+
+		if (background) {
+			downloadInBackground(project, extension, assets, deferred, assetsInfo, verifiedMarker, offline);
+		} else {
+			if (fetcher.complete.get()) {
+				markVerified(verifiedMarker, assetsInfo);
 			}
-			String assetName = entry.getKey();
-			int end = assetName.lastIndexOf("/") + 1;
-			if (end > 0) {
-				assetName = assetName.substring(end);
+
+			for (DownloadStats stats : DownloadStats.getHosts().values()) {
+				project.getLogger().info(":download stats {}", stats);
 			}
-			progressLogger.progress(assetName + " - " + position + "/" + totalSize + " (" + (int) ((position / (double) totalSize) * 100) + "%) assets downloaded");
-			position++;
 		}
+	}
 
-		progressLogger.completed();
+	/**
+	 * Start downloading the given assets without waiting for them, the build will wait for them to finish before it ends
+	 */
+	private static void downloadInBackground(Project project, LoomGradleExtension extension, File assets, List<Map.Entry<String, AssetObject>> objects, File assetsInfo, File verifiedMarker, boolean offline) {
+		synchronized (BACKGROUND) {
+			//IDE syncing and downloadAssets can both get here in the same build, there's no need to fetch everything twice
+			if (!BACKGROUND.add(assetsInfo)) return;
+		}
+
+		project.getLogger().lifecycle(":downloading {} sound and music assets in the background", objects.size());
+		AssetFetcher fetcher = new AssetFetcher(project, assets, extension.getLauncherFiles(), offline, extension.verifyAssets, null, objects.size());
+		DownloadExecutor executor = new DownloadExecutor(extension.downloadThreads);
+		fetcher.submit(executor, objects);
+
+		project.getGradle().buildFinished(result -> {
+			try {
+				executor.await();
+
+				if (fetcher.complete.get()) {
+					markVerified(verifiedMarker, assetsInfo);
+				}
+
+				project.getLogger().lifecycle(":finished downloading background assets");
+			} catch (IOException e) {
+				//The build has already finished, so all that can be done is say what went wrong, it'll be tried again next time
+				project.getLogger().warn("Failed to download background assets: " + e.getMessage(), e);
+			} finally {
+				executor.close();
+				ChecksumIndex.saveAll();
+
+				synchronized (BACKGROUND) {
+					BACKGROUND.remove(assetsInfo);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param name The name of an asset from the asset index
+	 *
+	 * @return Whether the game can start without the given asset, and so it can be fetched last
+	 */
+	static boolean isDeferrable(String name) {
+		int namespace = name.indexOf('/') + 1;
+		String path = name.substring(namespace);
+
+		//sounds.json itself is needed to start the sound system, just not what it points to
+		return path.startsWith("sounds/") || path.startsWith("music/") || path.startsWith("records/") || path.startsWith("resourcepacks/");
+	}
+
+	private static boolean isValid(File file, AssetObject object, boolean deepVerify) {
+		if (deepVerify) {
+			return Checksum.verify(file, object.getHash());
+		}
+
+		//Objects are named by their hash so are never changed in place, the only thing which goes wrong is an interrupted or truncated write
+		return file.exists() && file.length() == object.getSize();
+	}
+
+	private static boolean isMarkedVerified(File marker, File assetsInfo) throws IOException {
+		if (!marker.exists()) return false;
+
+		//The marker records the index it was made for, if the index has changed since then the marker is stale
+		return new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).equals(markerContents(assetsInfo));
+	}
+
+	private static void markVerified(File marker, File assetsInfo) throws IOException {
+		Files.write(marker.toPath(), markerContents(assetsInfo).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String markerContents(File assetsInfo) {
+		return assetsInfo.length() + ":" + assetsInfo.lastModified();
+	}
+
+	private static class AssetFetcher {
+		private final Project project;
+		private final File assets;
+		private final LauncherFiles launcher;
+		private final boolean offline, verify;
+		private final ProgressLogger progressLogger;
+		private final int totalSize;
+		private final AtomicInteger position = new AtomicInteger();
+		final AtomicBoolean complete = new AtomicBoolean(true);
+
+		AssetFetcher(Project project, File assets, LauncherFiles launcher, boolean offline, boolean verify, ProgressLogger progressLogger, int totalSize) {
+			this.project = project;
+			this.assets = assets;
+			this.launcher = launcher;
+			this.offline = offline;
+			this.verify = verify;
+			this.progressLogger = progressLogger;
+			this.totalSize = totalSize;
+		}
+
+		void submit(DownloadExecutor executor, List<Map.Entry<String, AssetObject>> entries) {
+			for (Map.Entry<String, AssetObject> entry : entries) {
+				AssetObject object = entry.getValue();
+				String sha1 = object.getHash();
+
+				String filename = "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1;
+				File file = new File(assets, filename);
+
+				executor.submit(entry.getKey(), () -> {
+					if (!isValid(file, object, verify) && !LauncherFiles.reuse(launcher.findAsset(sha1), file, sha1, project.getLogger())) {
+						if (offline) {
+							if (file.exists()) {
+								complete.set(false);
+								project.getLogger().warn("Outdated asset " + entry.getKey());
+							} else {
+								throw new GradleException("Asset " + entry.getKey() + " not found at " + file.getAbsolutePath());
+							}
+						} else {
+							project.getLogger().debug(":downloading asset " + entry.getKey());
+							DownloadUtil.downloadIfChanged(new URL(Constants.RESOURCES_BASE + sha1.substring(0, 2) + "/" + sha1), file, sha1, project.getLogger(), true);
+						}
+					}
+
+					int done = position.incrementAndGet();
+					if (progressLogger != null) {
+						String assetName = entry.getKey();
+						int end = assetName.lastIndexOf("/") + 1;
+						if (end > 0) {
+							assetName = assetName.substring(end);
+						}
+
+						synchronized (progressLogger) {
+							progressLogger.progress(assetName + " - " + done + "/" + totalSize + " (" + (int) ((done / (double) totalSize) * 100) + "%) assets downloaded");
+						}
+					}
+				});
+			}
+		}
 	}
 }
@@ -29,9 +29,11 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Checksum;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
+import net.fabricmc.loom.util.LauncherFiles;
 import net.fabricmc.loom.util.MinecraftVersionInfo;
 import net.fabricmc.loom.util.assets.AssetIndex;
 import net.fabricmc.loom.util.assets.AssetObject;
+import net.fabricmc.loom.util.download.DownloadExecutor;
 import net.fabricmc.loom.util.progress.ProgressLogger;
 import org.gradle.api.Project;
 
@@ -70,6 +72,34 @@ public class MinecraftLibraryProvider {
 		}
 	}
 
+	/**
+	 * Queue checking and fetching every library into {@link #MINECRAFT_LIBS}, from the launcher if it has them or downloading
+	 * them otherwise, so Gradle can resolve them from there rather than each one being downloaded in turn
+	 *
+	 * @param minecraftProvider The provider for the Minecraft version whose libraries are wanted
+	 * @param project The project the libraries are for
+	 * @param executor The executor to queue the work on
+	 * @param launcher The launcher installation to look for the libraries in first
+	 */
+	public void prefetch(MinecraftProvider minecraftProvider, Project project, DownloadExecutor executor, LauncherFiles launcher) {
+		initFiles(project, minecraftProvider);
+
+		for (MinecraftVersionInfo.Library library : minecraftProvider.versionInfo.libraries) {
+			//Natives have their hashes elsewhere, so are left for Gradle to fetch
+			if (!library.allowed() || !library.getClassifier().isEmpty()) continue;
+
+			File file = library.getFile(MINECRAFT_LIBS);
+			String sha1 = library.getSha1();
+			if (sha1.isEmpty()) continue;
+
+			executor.submit(library.name, () -> {
+				if ((!file.exists() || !Checksum.equals(file, sha1)) && !LauncherFiles.reuse(launcher.findLibrary(library), file, sha1, project.getLogger())) {
+					DownloadUtil.downloadIfChanged(new URL(library.getURL()), file, sha1, project.getLogger(), true);
+				}
+			});
+		}
+	}
+
 	public Collection<File> getLibraries() {
 		return libs;
 	}
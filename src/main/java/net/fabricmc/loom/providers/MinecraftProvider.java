@@ -26,10 +26,11 @@ package net.fabricmc.loom.providers;
 
 import com.google.common.io.Files;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.*;
-import net.fabricmc.stitch.merge.JarMerger;
+import net.fabricmc.loom.util.download.DownloadExecutor;
+import net.fabricmc.loom.util.download.DownloadExecutor.DownloadException;
+import net.fabricmc.loom.util.zip.ZipIndex;
 
 import org.gradle.api.GradleException;
 import org.gradle.api.Project;
@@ -38,11 +39,12 @@ import org.gradle.api.logging.Logger;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.Optional;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
-import java.util.zip.ZipError;
+import java.util.zip.ZipException;
 
 public class MinecraftProvider extends DependencyProvider {
 
@@ -82,23 +84,54 @@ public class MinecraftProvider extends DependencyProvider {
         	} else {
         		throw new GradleException("Missing jar(s); Client: " + MINECRAFT_CLIENT_JAR.exists() + ", Server: " + MINECRAFT_SERVER_JAR.exists());
         	}
-        } else {
-        	downloadJars(project.getLogger());
         }
 
 		libraryProvider = new MinecraftLibraryProvider();
+
+		if (!offline) {
+			//The jars and libraries don't depend on each other, so they can all be fetched at once
+			try (DownloadExecutor executor = new DownloadExecutor(extension.downloadThreads)) {
+				LauncherFiles launcher = extension.getLauncherFiles();
+				Future<Boolean> client = executor.submit("client jar", () -> downloadJar("client", MINECRAFT_CLIENT_JAR, launcher.findClientJar(minecraftVersion), project.getLogger()));
+				Future<Boolean> server = executor.submit("server jar", () -> downloadJar("server", MINECRAFT_SERVER_JAR, null, project.getLogger()));
+				libraryProvider.prefetch(this, project, executor, launcher);
+
+				//Merging can get going as soon as both jars are ready, even if the libraries are still downloading
+				if (executor.await(client) & executor.await(server)) {
+					mergeIfMissing(project.getLogger(), extension.compression.merged);
+				}
+
+				executor.await();
+			} catch (DownloadException e) {
+				throw new GradleException("Failed to download Minecraft " + minecraftVersion + ": " + e.getMessage(), e);
+			} finally {
+				ChecksumIndex.saveAll();
+			}
+		}
+
 		libraryProvider.provide(this, project);
 
+		mergeIfMissing(project.getLogger(), extension.compression.merged);
+	}
+
+	private void mergeIfMissing(Logger logger, int compression) throws IOException {
 		if (!MINECRAFT_MERGED_JAR.exists()) {
-			try {
-				mergeJars(project.getLogger());
-			} catch (ZipError e) {
-				DownloadUtil.delete(MINECRAFT_CLIENT_JAR);
-				DownloadUtil.delete(MINECRAFT_SERVER_JAR);
-
-				project.getLogger().error("Could not merge JARs! Deleting source JARs - please re-run the command and move on.", e);
-				throw new RuntimeException();
-			}
+			//Find out whether either jar is broken before starting, so only the one which is needs fetching again
+			checkJar("client", MINECRAFT_CLIENT_JAR, logger);
+			checkJar("server", MINECRAFT_SERVER_JAR, logger);
+
+			mergeJars(logger, compression);
+		}
+	}
+
+	private static void checkJar(String side, File jar, Logger logger) throws IOException {
+		try {
+			ZipIndex.open(jar.toPath()).close();
+		} catch (ZipException e) {
+			DownloadUtil.delete(jar);
+
+			logger.error("The " + side + " jar is corrupt! Deleting it - please re-run the command and move on.", e);
+			throw new GradleException("Corrupt " + side + " jar: " + e.getMessage(), e);
 		}
 	}
 
@@ -114,61 +147,77 @@ public class MinecraftProvider extends DependencyProvider {
 	private void downloadMcJson(Project project, boolean offline) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		File manifests = new File(extension.getUserCache(), "version_manifest.json");
+		File lookupFile = new File(extension.getUserCache(), "version_lookup.json");
 
-		if (offline) {
-			if (manifests.exists()) {
-				//If there is the manifests already we'll presume that's good enough
-				project.getLogger().debug("Found version manifests, presuming up-to-date");
-			} else {
-				//If we don't have the manifests then there's nothing more we can do
-				throw new GradleException("Version manifests not found at " + manifests.getAbsolutePath());
-			}
-		} else {
-			project.getLogger().debug("Downloading version manifests");
-			DownloadUtil.downloadIfChanged(new URL("https://launchermeta.mojang.com/mc/game/version_manifest.json"), manifests, project.getLogger());
+		if (offline && MINECRAFT_JSON.exists()) {
+			//If there is the manifest already we'll presume that's good enough
+			project.getLogger().debug("Found Minecraft {} manifest, presuming up-to-date", minecraftVersion);
+			return;
 		}
 
-		String versionManifest = Files.asCharSource(manifests, StandardCharsets.UTF_8).read();
-		ManifestVersion mcManifest = new GsonBuilder().create().fromJson(versionManifest, ManifestVersion.class);
-
-		Optional<ManifestVersion.Versions> optionalVersion = mcManifest.versions.stream().filter(versions -> versions.id.equalsIgnoreCase(minecraftVersion)).findFirst();
-		if (optionalVersion.isPresent()) {
+		//The lookup is only remade from the full manifests when it's too old or doesn't know the version
+		VersionLookup lookup = VersionLookup.read(lookupFile);
+		if (lookup == null || lookup.get(minecraftVersion) == null || !offline && lookup.isStale(extension.versionManifestTtl)) {
 			if (offline) {
-				if (MINECRAFT_JSON.exists()) {
-					//If there is the manifest already we'll presume that's good enough
-					project.getLogger().debug("Found Minecraft {} manifest, presuming up-to-date", minecraftVersion);
+				if (manifests.exists()) {
+					//If there is the manifests already we'll presume that's good enough
+					project.getLogger().debug("Found version manifests, presuming up-to-date");
 				} else {
 					//If we don't have the manifests then there's nothing more we can do
-					throw new GradleException("Minecraft " + minecraftVersion + " manifest not found at " + MINECRAFT_JSON.getAbsolutePath());
+					throw new GradleException("Version manifests not found at " + manifests.getAbsolutePath());
 				}
 			} else {
-				project.getLogger().debug("Downloading Minecraft {} manifest", minecraftVersion);
-				DownloadUtil.downloadIfChanged(new URL(optionalVersion.get().url), MINECRAFT_JSON, project.getLogger());
+				project.getLogger().debug("Downloading version manifests");
+				DownloadUtil.downloadIfChanged(new URL(Constants.VERSION_MANIFEST), manifests, project.getLogger());
+			}
+
+			try (Reader reader = Files.newReader(manifests, StandardCharsets.UTF_8)) {
+				lookup = VersionLookup.fromManifest(gson.fromJson(reader, ManifestVersion.class), offline ? 0 : System.currentTimeMillis());
 			}
-		} else {
+			lookup.write(lookupFile);
+		}
+
+		VersionLookup.Version version = lookup.get(minecraftVersion);
+		if (version == null) {
 			throw new RuntimeException("Failed to find minecraft version: " + minecraftVersion);
 		}
 
-	}
+		if (offline) {
+			//If we don't have the manifest then there's nothing more we can do
+			throw new GradleException("Minecraft " + minecraftVersion + " manifest not found at " + MINECRAFT_JSON.getAbsolutePath());
+		}
 
-	private void downloadJars(Logger logger) throws IOException {
-		if (!MINECRAFT_CLIENT_JAR.exists() || !Checksum.equals(MINECRAFT_CLIENT_JAR, versionInfo.downloads.get("client").sha1)) {
-			logger.debug("Downloading Minecraft {} client jar", minecraftVersion);
-			DownloadUtil.downloadIfChanged(new URL(versionInfo.downloads.get("client").url), MINECRAFT_CLIENT_JAR, logger);
+		//Version manifests are never changed once published, so if the hash is known and matches there's no need to ask
+		if (version.sha1 == null || !MINECRAFT_JSON.exists() || !Checksum.equals(MINECRAFT_JSON, version.sha1)) {
+			project.getLogger().debug("Downloading Minecraft {} manifest", minecraftVersion);
+			DownloadUtil.downloadIfChanged(new URL(version.url), MINECRAFT_JSON, version.sha1, project.getLogger(), false);
 		}
+	}
 
-		if (!MINECRAFT_SERVER_JAR.exists() || !Checksum.equals(MINECRAFT_SERVER_JAR, versionInfo.downloads.get("server").sha1)) {
-			logger.debug("Downloading Minecraft {} server jar", minecraftVersion);
-			DownloadUtil.downloadIfChanged(new URL(versionInfo.downloads.get("server").url), MINECRAFT_SERVER_JAR, logger);
+	private void downloadJar(String side, File jar, File launcherCopy, Logger logger) throws IOException {
+		MinecraftVersionInfo.Downloads download = versionInfo.downloads.get(side);
+
+		if ((!jar.exists() || !Checksum.equals(jar, download.sha1)) && !LauncherFiles.reuse(launcherCopy, jar, download.sha1, logger)) {
+			logger.debug("Downloading Minecraft {} {} jar", minecraftVersion, side);
+			DownloadUtil.downloadIfChanged(new URL(download.url), jar, download.sha1, logger, false);
 		}
 	}
 
-	private void mergeJars(Logger logger) throws IOException {
+	private void mergeJars(Logger logger, int compression) throws IOException {
 		logger.lifecycle(":merging jars");
-		try (JarMerger jarMerger = new JarMerger(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR)) {
-			jarMerger.enableSyntheticParamsOffset();
-			jarMerger.merge();
-		}
+		MinecraftJarMerger.merge(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR, Runtime.getRuntime().availableProcessors(), compression);
+	}
+
+	public File getVersionJson() {
+		return MINECRAFT_JSON;
+	}
+
+	public File getClientJar() {
+		return MINECRAFT_CLIENT_JAR;
+	}
+
+	public File getServerJar() {
+		return MINECRAFT_SERVER_JAR;
 	}
 
 	public File getMergedJar() {
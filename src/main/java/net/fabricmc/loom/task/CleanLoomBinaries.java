@@ -25,9 +25,15 @@
 package net.fabricmc.loom.task;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.DeletingFileVisitor;
+import net.fabricmc.loom.util.RemapCache;
 import org.gradle.api.Project;
 import org.gradle.api.tasks.TaskAction;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 public class CleanLoomBinaries extends AbstractLoomTask {
     @TaskAction
     public void run() {
@@ -36,5 +42,13 @@ public class CleanLoomBinaries extends AbstractLoomTask {
         extension.getMinecraftProvider().getMergedJar().delete();
         extension.getMinecraftMappedProvider().getIntermediaryJar().delete();
         extension.getMinecraftMappedProvider().getMappedJar().delete();
+        File remappedClasses = RemapCache.getRoot(extension.getUserCache());
+        if (remappedClasses.exists()) {
+            try {
+                Files.walkFileTree(remappedClasses.toPath(), new DeletingFileVisitor());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
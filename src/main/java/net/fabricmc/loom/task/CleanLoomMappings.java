@@ -38,7 +38,7 @@ public class CleanLoomMappings extends AbstractLoomTask {
         Project project = this.getProject();
         LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
         extension.getMappingsProvider().MAPPINGS_TINY.delete();
-        extension.getMappingsProvider().MAPPINGS_TINY_BASE.delete();
+        extension.getMappingsProvider().MAPPINGS_TINY_BINARY.delete();
         extension.getMinecraftMappedProvider().getIntermediaryJar().delete();
         extension.getMinecraftMappedProvider().getMappedJar().delete();
         try {
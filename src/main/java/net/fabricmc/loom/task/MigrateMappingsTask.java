@@ -26,8 +26,10 @@ package net.fabricmc.loom.task;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.MappingsRegistry;
 import net.fabricmc.loom.util.Version;
 import net.fabricmc.mappings.*;
+import com.google.common.hash.Hashing;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.io.MappingsReader;
 import org.cadixdev.mercury.Mercury;
@@ -36,8 +38,8 @@ import org.gradle.api.Project;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -93,9 +95,7 @@ public class MigrateMappingsTask extends AbstractLoomTask {
         Mappings sourceMappings = extension.getMappingsProvider().getMappings();
         Mappings targetMappings;
 
-        try (FileInputStream stream = new FileInputStream(mappingsFile)) {
-            targetMappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(stream, false);
-        }
+        targetMappings = MappingsRegistry.get(project).getMappings(mappingsFile, getBinaryCopy(extension, mappingsFile));
 
         project.getLogger().lifecycle(":joining mappings");
         MappingSet mappingSet = new MappingsJoiner(sourceMappings, targetMappings, "intermediary", "named").read();
@@ -126,6 +126,27 @@ public class MigrateMappingsTask extends AbstractLoomTask {
         System.gc();
     }
 
+    private static File getBinaryCopy(LoomGradleExtension extension, File mappingsFile) throws IOException {
+        //The target mappings could be anywhere, so the binary copy is kept in the user cache rather than next to them
+        File cacheDir = new File(extension.getUserCache(), "migrate-mappings");
+        String path = Hashing.sha1().hashString(mappingsFile.getAbsolutePath(), StandardCharsets.UTF_8).toString();
+        String name = path + '-' + mappingsFile.length() + '-' + mappingsFile.lastModified() + ".bin";
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Could not create mappings cache directory: " + cacheDir);
+        }
+
+        //Copies from older versions of the same file won't be used again
+        File[] stale = cacheDir.listFiles((dir, file) -> file.startsWith(path + '-') && !file.equals(name));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+
+        return new File(cacheDir, name);
+    }
+
     public static class MappingsJoiner extends MappingsReader {
         private final Mappings sourceMappings, targetMappings;
         private final String fromNamespace, toNamespace;
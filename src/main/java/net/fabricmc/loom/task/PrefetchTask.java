@@ -0,0 +1,153 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task;
+
+import com.google.gson.Gson;
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.providers.MappingsProvider;
+import net.fabricmc.loom.providers.MinecraftAssetsProvider;
+import net.fabricmc.loom.providers.MinecraftMappedProvider;
+import net.fabricmc.loom.providers.MinecraftProvider;
+import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.MinecraftVersionInfo;
+import net.fabricmc.loom.util.PrefetchBundle;
+import net.fabricmc.loom.util.assets.AssetIndex;
+import net.fabricmc.loom.util.assets.AssetObject;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects everything this build needs from the Loom user cache into a single archive, which an offline build on another
+ * machine can import by setting <code>loom.prefetchBundle</code>
+ */
+public class PrefetchTask extends AbstractLoomTask {
+	private File output;
+	private boolean includeAssets;
+
+	public PrefetchTask() {
+		output = new File(getProject().getBuildDir(), "loom-prefetch.zip");
+		//What goes in depends on the state of the user cache, which isn't tracked as an input, so always write it again
+		getOutputs().upToDateWhen(task -> false);
+	}
+
+	@OutputFile
+	public File getOutput() {
+		return output;
+	}
+
+	@Option(option = "output", description = "Where to write the bundle")
+	public void setOutput(String output) {
+		this.output = getProject().file(output);
+	}
+
+	@Input
+	public boolean isIncludeAssets() {
+		return includeAssets;
+	}
+
+	@Option(option = "include-assets", description = "Whether to include the game's assets in the bundle")
+	public void setIncludeAssets(boolean includeAssets) {
+		this.includeAssets = includeAssets;
+	}
+
+	@TaskAction
+	public void run() throws IOException {
+		LoomGradleExtension extension = getProject().getExtensions().getByType(LoomGradleExtension.class);
+		Path userCache = extension.getUserCache().toPath();
+		MinecraftProvider minecraftProvider = extension.getMinecraftProvider();
+		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+		MinecraftMappedProvider mappedProvider = extension.getMinecraftMappedProvider();
+
+		Map<String, File> files = new LinkedHashMap<>();
+		//Roughly in the order the build will want them, although the import reads them all regardless
+		addCached(files, userCache, new File(extension.getUserCache(), "version_manifest.json"));
+		addCached(files, userCache, new File(extension.getUserCache(), "version_lookup.json"));
+		addCached(files, userCache, minecraftProvider.getVersionJson());
+		addCached(files, userCache, minecraftProvider.getClientJar());
+		addCached(files, userCache, minecraftProvider.getServerJar());
+		addCached(files, userCache, minecraftProvider.getMergedJar());
+		addCached(files, userCache, mappingsProvider.MAPPINGS_TINY);
+		addCached(files, userCache, mappedProvider.getIntermediaryJar());
+		addCached(files, userCache, mappedProvider.getMappedJar());
+
+		for (MinecraftVersionInfo.Library library : minecraftProvider.versionInfo.libraries) {
+			if (library.allowed()) addCached(files, userCache, library.getFile(minecraftProvider.libraryProvider.MINECRAFT_LIBS));
+		}
+
+		//Whatever Gradle had to fetch itself goes in the libraries repository, which is checked before any remote one
+		addResolved(files, Constants.MINECRAFT_DEPENDENCIES);
+		addResolved(files, Constants.MAPPINGS);
+
+		if (includeAssets) {
+			MinecraftAssetsProvider.provide(minecraftProvider, getProject());
+
+			File assets = new File(extension.getUserCache(), "assets");
+			File assetsInfo = new File(assets, "indexes" + File.separator + minecraftProvider.versionInfo.assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".json");
+			addCached(files, userCache, assetsInfo);
+
+			AssetIndex index;
+			try (FileReader reader = new FileReader(assetsInfo)) {
+				index = new Gson().fromJson(reader, AssetIndex.class);
+			}
+
+			for (AssetObject object : index.getUniqueObjects()) {
+				String sha1 = object.getHash();
+				addCached(files, userCache, new File(assets, "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1));
+			}
+		}
+
+		List<PrefetchBundle.Entry> written = PrefetchBundle.write(output, files);
+		long size = written.stream().mapToLong(entry -> entry.size).sum();
+		getLogger().lifecycle(":wrote {} files ({} bytes) to {}", written.size(), size, output);
+	}
+
+	private static void addCached(Map<String, File> files, Path userCache, File file) {
+		if (file != null && file.isFile()) {
+			files.put(userCache.relativize(file.toPath()).toString().replace(File.separatorChar, '/'), file);
+		}
+	}
+
+	private void addResolved(Map<String, File> files, String configuration) {
+		for (ResolvedArtifact artifact : getProject().getConfigurations().getByName(configuration).getResolvedConfiguration().getResolvedArtifacts()) {
+			if (!(artifact.getId().getComponentIdentifier() instanceof ModuleComponentIdentifier)) continue;
+			ModuleComponentIdentifier id = (ModuleComponentIdentifier) artifact.getId().getComponentIdentifier();
+
+			String path = "libraries/" + id.getGroup().replace('.', '/') + '/' + id.getModule() + '/' + id.getVersion() + '/' + artifact.getFile().getName();
+			files.putIfAbsent(path, artifact.getFile());
+		}
+	}
+}
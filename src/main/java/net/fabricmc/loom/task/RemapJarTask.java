@@ -32,8 +32,7 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.MixinRefmapHelper;
-import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
+import net.fabricmc.loom.util.PipelinedJarWriter;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
 import org.apache.commons.io.FileUtils;
@@ -48,19 +47,20 @@ import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.jvm.tasks.Jar;
 import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.zip.ZipEntry;
 
 public class RemapJarTask extends Jar {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
@@ -140,6 +140,24 @@ public class RemapJarTask extends Jar {
         return GSON.toJson(jsonObject);
     }
 
+    private byte[] addNestedJars(byte[] modJson) {
+        JsonObject json = GSON.fromJson(new String(modJson, StandardCharsets.UTF_8), JsonObject.class);
+        JsonArray nestedJars = json.getAsJsonArray("jars");
+        if (nestedJars == null || !json.has("jars")) {
+            nestedJars = new JsonArray();
+        }
+
+        for (File file : nestedFiles) {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("file", "META-INF/jars/" + file.getName());
+            nestedJars.add(jsonObject);
+        }
+
+        json.add("jars", nestedJars);
+
+        return GSON.toJson(json).getBytes(StandardCharsets.UTF_8);
+    }
+
     @TaskAction
     public void doTask() throws Throwable {
         Project project = getProject();
@@ -166,7 +184,7 @@ public class RemapJarTask extends Jar {
 
         TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
 
-        remapperBuilder = remapperBuilder.withMappings(TinyRemapperMappingsHelper.create(mappingsProvider.getMappings(), fromM, toM));
+        remapperBuilder = remapperBuilder.withMappings(mappingsProvider.getRemapperMappings(fromM, toM));
         if (mixinMapFile.exists()) {
             remapperBuilder = remapperBuilder.withMappings(TinyUtils.createTinyMappingProvider(mixinMapPath, fromM, toM));
         }
@@ -181,8 +199,18 @@ public class RemapJarTask extends Jar {
 
         TinyRemapper remapper = remapperBuilder.build();
 
-        try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
-            outputConsumer.addNonClassFiles(input);
+        //The archive already holds what the Jar task copied in (such as the nested jars), which would be lost when it's written over
+        Path copied = output.resolveSibling(output.getFileName() + ".copied");
+        List<Path> nonClassSources = new ArrayList<>();
+        nonClassSources.add(input);
+        if (Files.exists(output)) {
+            Files.move(output, copied, StandardCopyOption.REPLACE_EXISTING);
+            nonClassSources.add(copied);
+        }
+
+        //The previously copied jars are inserted into fabric.mod.json as it's written
+        try (PipelinedJarWriter outputConsumer = new PipelinedJarWriter(output, PipelinedJarWriter.DEFAULT_QUEUE_SIZE, extension.compression.remapJar)) {
+            outputConsumer.addNonClassFiles(nonClassSources, Collections.singletonMap("fabric.mod.json", this::addNestedJars));
             remapper.readClassPath(classpath);
             remapper.readInputs(input);
             remapper.apply(outputConsumer);
@@ -190,6 +218,7 @@ public class RemapJarTask extends Jar {
             throw new RuntimeException("Failed to remap " + input + " to " + output, e);
         } finally {
             remapper.finish();
+            Files.deleteIfExists(copied);
         }
 
         if (!Files.exists(output)) {
@@ -200,27 +229,6 @@ public class RemapJarTask extends Jar {
             project.getLogger().debug("Transformed mixin reference maps in output JAR!");
         }
 
-        // inserts the previously copied jars into fabric.mod.json
-        ZipUtil.transformEntries(getArchiveFile().get().getAsFile(), single(new ZipEntryTransformerEntry("fabric.mod.json", new StringZipEntryTransformer() {
-            @Override
-            protected String transform(ZipEntry zipEntry, String input) throws IOException {
-                JsonObject json = GSON.fromJson(input, JsonObject.class);
-                JsonArray nestedJars = json.getAsJsonArray("jars");
-                if (nestedJars == null || !json.has("jars")) {
-                    nestedJars = new JsonArray();
-                }
-
-                for (File file : nestedFiles) {
-                    JsonObject jsonObject = new JsonObject();
-                    jsonObject.addProperty("file", "META-INF/jars/" + file.getName());
-                    nestedJars.add(jsonObject);
-                }
-
-                json.add("jars", nestedJars);
-
-                return GSON.toJson(json);
-            }
-        })));
 //		if (getAddNestedDependencies().get()) {
 //			if (NestedJars.addNestedJars(project, output)) {
 //				project.getLogger().debug("Added nested jar paths to mod json");
@@ -241,10 +249,6 @@ public class RemapJarTask extends Jar {
 		}*/
     }
 
-    private static ZipEntryTransformerEntry[] single(ZipEntryTransformerEntry element) {
-        return new ZipEntryTransformerEntry[]{element};
-    }
-
     @InputFile
     public RegularFileProperty getInput() {
         return input;
@@ -24,10 +24,12 @@
 
 package net.fabricmc.loom.task;
 
+import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.task.fernflower.FernFlowerTask;
 import net.fabricmc.loom.util.LineNumberRemapper;
 import net.fabricmc.loom.util.progress.ProgressLogger;
-import net.fabricmc.stitch.util.StitchUtil;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipIndex;
 import org.gradle.api.Project;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
@@ -36,6 +38,9 @@ import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 public class RemapLineNumbersTask extends AbstractLoomTask {
     private Object input;
@@ -45,6 +50,7 @@ public class RemapLineNumbersTask extends AbstractLoomTask {
     @TaskAction
     public void doTask() throws Throwable {
         Project project = getProject();
+        LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 
         project.getLogger().lifecycle(":adjusting line numbers");
         LineNumberRemapper remapper = new LineNumberRemapper();
@@ -53,13 +59,18 @@ public class RemapLineNumbersTask extends AbstractLoomTask {
         ProgressLogger progressLogger = ProgressLogger.getProgressFactory(project, FernFlowerTask.class.getName());
         progressLogger.start("Adjusting line numbers", "linemap");
 
-        try (StitchUtil.FileSystemDelegate inFs = StitchUtil.getJarFileSystem(getInput(), true);
-             StitchUtil.FileSystemDelegate outFs = StitchUtil.getJarFileSystem(getOutput(), true)) {
-            remapper.process(progressLogger, inFs.get().getPath("/"), outFs.get().getPath("/"));
-        } catch (IOException e) {
+        //Written straight at the configured level, rather than through a jar file system which could only ever use the default
+        Path output = getOutput().toPath();
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+
+        try (ZipIndex in = ZipIndex.open(getInput().toPath()); RawZipWriter out = new RawZipWriter(temp, extension.compression.lineMapped)) {
+            remapper.process(progressLogger, in, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
             throw new RuntimeException(e);
         }
 
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
         progressLogger.completed();
     }
 
@@ -0,0 +1,101 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.task;
+
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ChecksumIndex;
+import net.fabricmc.loom.util.DownloadUtil;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-hashes every file in the Loom user cache with a recorded checksum, deleting any which no longer match
+ */
+public class VerifyLoomCacheTask extends AbstractLoomTask {
+	@TaskAction
+	public void run() throws IOException {
+		LoomGradleExtension extension = getProject().getExtensions().getByType(LoomGradleExtension.class);
+		ChecksumIndex index = ChecksumIndex.forRoot(extension.getUserCache());
+
+		List<File> corrupt = new ArrayList<>();
+		int checked = 0;
+
+		for (Map.Entry<File, String> entry : index.getRecordedHashes().entrySet()) {
+			File file = entry.getKey();
+
+			if (!file.exists()) {
+				index.remove(file);
+				continue;
+			}
+
+			String hash = hash(file);
+			checked++;
+
+			if (hash.equals(entry.getValue())) {
+				Checksum.markVerified(file, hash);
+			} else {
+				getLogger().error("Cached file " + file + " should have hash " + entry.getValue() + " but has " + hash);
+				index.remove(file);
+				DownloadUtil.delete(file);
+				corrupt.add(file);
+			}
+		}
+
+		index.save();
+
+		if (!corrupt.isEmpty()) {
+			throw new GradleException("Found " + corrupt.size() + " corrupt file(s) out of " + checked + " in the Loom cache, they have been deleted and will be downloaded again when next needed");
+		}
+
+		getLogger().lifecycle(":verified " + checked + " cached files");
+	}
+
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Java is missing SHA-1 support?", e);
+		}
+
+		try (DigestInputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) != -1);
+		}
+
+		return Checksum.toHex(digest.digest());
+	}
+}
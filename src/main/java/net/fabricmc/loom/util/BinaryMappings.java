@@ -0,0 +1,372 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MappingsProvider;
+import net.fabricmc.mappings.MethodEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * {@link Mappings} read from a compact binary copy of a Tiny file, which is memory mapped rather than parsed
+ *
+ * <p>The file is a table of every distinct string in the mappings, followed by tables of classes, fields and methods which
+ * refer to the strings by index for each namespace. Entries and their names are only created as they are asked for, so
+ * nothing close to the whole mappings has to be held on the heap at once.
+ */
+public class BinaryMappings implements Mappings {
+	private static final int MAGIC = 0x4C4D4150; //LMAP
+	private static final int VERSION = 1;
+	/** Marks a name which is missing in a namespace */
+	private static final int MISSING = -1;
+
+	private final ByteBuffer buffer;
+	private final List<String> namespaces;
+	private final Map<String, Integer> namespaceIndex = new HashMap<>();
+	private final int stringOffsets, stringData;
+	private final String[] strings;
+	private final int classes, classCount;
+	private final int fields, fieldCount;
+	private final int methods, methodCount;
+
+	private BinaryMappings(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		try {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) throw new IOException("Not a binary mappings file");
+			int position = 24; //Past the magic, version, and source length and time
+
+			int namespaceCount = buffer.getInt(position);
+			position += 4;
+			int[] namespaceNames = new int[namespaceCount];
+			for (int i = 0; i < namespaceCount; i++, position += 4) {
+				namespaceNames[i] = buffer.getInt(position);
+			}
+
+			int stringCount = buffer.getInt(position);
+			strings = new String[stringCount];
+			stringOffsets = position + 4;
+			//There is an extra offset at the end of the table for where the last string finishes
+			stringData = stringOffsets + (stringCount + 1) * 4;
+			position = stringData + buffer.getInt(stringOffsets + stringCount * 4);
+
+			List<String> namespaces = new ArrayList<>(namespaceCount);
+			for (int i = 0; i < namespaceCount; i++) {
+				String namespace = getString(namespaceNames[i]);
+				namespaces.add(namespace);
+				namespaceIndex.put(namespace, i);
+			}
+			this.namespaces = Collections.unmodifiableList(namespaces);
+
+			classCount = buffer.getInt(position);
+			classes = position + 4;
+			position = classes + classCount * namespaceCount * 4;
+
+			fieldCount = buffer.getInt(position);
+			fields = position + 4;
+			position = fields + fieldCount * namespaceCount * 12;
+
+			methodCount = buffer.getInt(position);
+			methods = position + 4;
+			position = methods + methodCount * namespaceCount * 12;
+
+			if (position > buffer.limit()) throw new IOException("Binary mappings file is truncated");
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new IOException("Binary mappings file is truncated", e);
+		}
+	}
+
+	/**
+	 * Load the given Tiny file through its binary copy, making the copy first if it is missing or out of date
+	 *
+	 * @param tiny The Tiny file to load
+	 * @param binary Where the binary copy of the Tiny file is kept
+	 *
+	 * @return The mappings from the Tiny file
+	 *
+	 * @throws IOException If the Tiny file can't be read
+	 */
+	public static Mappings load(File tiny, File binary) throws IOException {
+		if (binary.exists()) {
+			try {
+				BinaryMappings mappings = open(binary);
+				if (mappings.isFrom(tiny)) return mappings;
+			} catch (IOException e) {
+				//Made again below
+			}
+		}
+
+		Mappings mappings;
+		try (FileInputStream stream = new FileInputStream(tiny)) {
+			mappings = MappingsProvider.readTinyMappings(stream, false);
+		}
+
+		try {
+			write(mappings, tiny, binary);
+		} catch (IOException e) {
+			//Not being able to write the binary copy (such as when the old one is still mapped on Windows) only means the text has to be read again next time
+			return mappings;
+		}
+
+		return open(binary);
+	}
+
+	private static BinaryMappings open(File binary) throws IOException {
+		try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+			//The mapping stays valid once the channel is closed
+			return new BinaryMappings(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	private boolean isFrom(File tiny) {
+		return buffer.getLong(8) == tiny.length() && buffer.getLong(16) == tiny.lastModified();
+	}
+
+	/**
+	 * Write the binary copy of the given Tiny file from mappings which have already been read from it
+	 *
+	 * @param mappings The mappings in the Tiny file
+	 * @param tiny The Tiny file the mappings were read from
+	 * @param binary Where to write the binary copy
+	 *
+	 * @throws IOException If the binary copy can't be written
+	 */
+	public static void write(Mappings mappings, File tiny, File binary) throws IOException {
+		List<String> namespaces = new ArrayList<>(mappings.getNamespaces());
+		Map<String, Integer> stringIds = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		Function<String, Integer> intern = string -> string == null ? MISSING : stringIds.computeIfAbsent(string, k -> {
+			strings.add(k);
+			return strings.size() - 1;
+		});
+
+		int[] namespaceIds = namespaces.stream().mapToInt(intern::apply).toArray();
+
+		int[] classTable = new int[mappings.getClassEntries().size() * namespaces.size()];
+		int i = 0;
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			for (String namespace : namespaces) {
+				classTable[i++] = intern.apply(entry.get(namespace));
+			}
+		}
+
+		int[] fieldTable = new int[mappings.getFieldEntries().size() * namespaces.size() * 3];
+		i = 0;
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			for (String namespace : namespaces) {
+				i = putTriple(fieldTable, i, entry.get(namespace), intern);
+			}
+		}
+
+		int[] methodTable = new int[mappings.getMethodEntries().size() * namespaces.size() * 3];
+		i = 0;
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			for (String namespace : namespaces) {
+				i = putTriple(methodTable, i, entry.get(namespace), intern);
+			}
+		}
+
+		Path temp = Files.createTempFile(binary.getAbsoluteFile().getParentFile().toPath(), binary.getName(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(tiny.length());
+				out.writeLong(tiny.lastModified());
+
+				writeTable(out, namespaceIds, namespaceIds.length);
+
+				List<byte[]> encoded = new ArrayList<>(strings.size());
+				out.writeInt(strings.size());
+				int offset = 0;
+				for (String string : strings) {
+					byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+					encoded.add(bytes);
+
+					out.writeInt(offset);
+					offset += bytes.length;
+				}
+				out.writeInt(offset);
+				for (byte[] bytes : encoded) {
+					out.write(bytes);
+				}
+
+				writeTable(out, classTable, mappings.getClassEntries().size());
+				writeTable(out, fieldTable, mappings.getFieldEntries().size());
+				writeTable(out, methodTable, mappings.getMethodEntries().size());
+			}
+
+			try {
+				Files.move(temp, binary.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, binary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static int putTriple(int[] table, int index, EntryTriple triple, Function<String, Integer> intern) {
+		if (triple == null) {
+			table[index++] = MISSING;
+			table[index++] = MISSING;
+			table[index++] = MISSING;
+		} else {
+			table[index++] = intern.apply(triple.getOwner());
+			table[index++] = intern.apply(triple.getName());
+			table[index++] = intern.apply(triple.getDesc());
+		}
+
+		return index;
+	}
+
+	private static void writeTable(DataOutputStream out, int[] table, int count) throws IOException {
+		out.writeInt(count);
+
+		for (int value : table) {
+			out.writeInt(value);
+		}
+	}
+
+	private String getString(int id) {
+		if (id == MISSING) return null;
+
+		String string = strings[id];
+		if (string == null) {
+			int start = buffer.getInt(stringOffsets + id * 4);
+			int end = buffer.getInt(stringOffsets + id * 4 + 4);
+
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = buffer.duplicate();
+			view.position(stringData + start);
+			view.get(bytes);
+
+			//Racing threads will only ever decode the same string
+			strings[id] = string = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		return string;
+	}
+
+	private int getNamespace(String namespace) {
+		Integer index = namespaceIndex.get(namespace);
+		return index != null ? index : MISSING;
+	}
+
+	private EntryTriple getTriple(int table, int index, String namespace) {
+		int column = getNamespace(namespace);
+		if (column == MISSING) return null;
+
+		int position = table + (index * namespaces.size() + column) * 12;
+		int owner = buffer.getInt(position);
+		if (owner == MISSING) return null;
+
+		return new EntryTriple(getString(owner), getString(buffer.getInt(position + 4)), getString(buffer.getInt(position + 8)));
+	}
+
+	@Override
+	public Collection<String> getNamespaces() {
+		return namespaces;
+	}
+
+	@Override
+	public Collection<ClassEntry> getClassEntries() {
+		return new AbstractList<ClassEntry>() {
+			@Override
+			public ClassEntry get(int index) {
+				if (index < 0 || index >= classCount) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+				return namespace -> {
+					int column = getNamespace(namespace);
+					return column == MISSING ? null : getString(buffer.getInt(classes + (index * namespaces.size() + column) * 4));
+				};
+			}
+
+			@Override
+			public int size() {
+				return classCount;
+			}
+		};
+	}
+
+	@Override
+	public Collection<FieldEntry> getFieldEntries() {
+		return new AbstractList<FieldEntry>() {
+			@Override
+			public FieldEntry get(int index) {
+				if (index < 0 || index >= fieldCount) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+				return namespace -> getTriple(fields, index, namespace);
+			}
+
+			@Override
+			public int size() {
+				return fieldCount;
+			}
+		};
+	}
+
+	@Override
+	public Collection<MethodEntry> getMethodEntries() {
+		return new AbstractList<MethodEntry>() {
+			@Override
+			public MethodEntry get(int index) {
+				if (index < 0 || index >= methodCount) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+				return namespace -> getTriple(methods, index, namespace);
+			}
+
+			@Override
+			public int size() {
+				return methodCount;
+			}
+		};
+	}
+}
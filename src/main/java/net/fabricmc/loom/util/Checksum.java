@@ -30,23 +30,105 @@ import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Checksum {
+	/** Files which have already been hashed, so long as they've not changed since */
+	private static final Map<String, VerifiedFile> VERIFIED = new ConcurrentHashMap<>();
+
 	public static boolean equals(File file, String checksum) {
 		if (file == null) {
 			return false;
 		}
+
+		String known = getVerified(file);
+		if (known != null) {
+			return known.equals(checksum);
+		}
+
+		return verify(file, checksum);
+	}
+
+	/**
+	 * Hash the given file regardless of whether it has been verified before
+	 *
+	 * @param file The file to hash
+	 * @param checksum The expected SHA-1 hash of the file, in lower case hexadecimal
+	 *
+	 * @return Whether the file exists and has the expected hash
+	 */
+	public static boolean verify(File file, String checksum) {
+		if (file == null || !file.exists()) {
+			return false;
+		}
+
 		try {
 			//noinspection deprecation
 			HashCode hash = Files.asByteSource(file).hash(Hashing.sha1());
-			StringBuilder builder = new StringBuilder();
-			for (Byte hashBytes : hash.asBytes()) {
-				builder.append(Integer.toString((hashBytes & 0xFF) + 0x100, 16).substring(1));
-			}
-			return builder.toString().equals(checksum);
+			String sha1 = toHex(hash.asBytes());
+			markVerified(file, sha1);
+			return sha1.equals(checksum);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return false;
 	}
+
+	/**
+	 * Remember the SHA-1 hash of the given file, so it doesn't have to be worked out again whilst the file is unchanged
+	 *
+	 * <p>Files in a directory with a {@link ChecksumIndex} are remembered between builds, others only for the current one
+	 *
+	 * @param file The file which has been hashed
+	 * @param sha1 The SHA-1 hash of the file's current contents, in lower case hexadecimal
+	 */
+	public static void markVerified(File file, String sha1) {
+		ChecksumIndex index = ChecksumIndex.forFile(file);
+		if (index != null) {
+			index.put(file, sha1);
+			return;
+		}
+
+		VERIFIED.put(file.getAbsolutePath(), new VerifiedFile(file.length(), file.lastModified(), sha1));
+	}
+
+	/**
+	 * @param file The file to get the SHA-1 hash of
+	 *
+	 * @return The SHA-1 hash of the given file if it's already known and the file hasn't changed since, <code>null</code> otherwise
+	 */
+	private static String getVerified(File file) {
+		ChecksumIndex index = ChecksumIndex.forFile(file);
+		if (index != null) return index.get(file);
+
+		VerifiedFile verified = VERIFIED.get(file.getAbsolutePath());
+		if (verified == null) return null;
+
+		if (verified.length != file.length() || verified.lastModified != file.lastModified()) {
+			VERIFIED.remove(file.getAbsolutePath(), verified);
+			return null;
+		}
+
+		return verified.sha1;
+	}
+
+	public static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder();
+		for (byte hashByte : bytes) {
+			builder.append(Integer.toString((hashByte & 0xFF) + 0x100, 16).substring(1));
+		}
+		return builder.toString();
+	}
+
+	private static class VerifiedFile {
+		final long length, lastModified;
+		final String sha1;
+
+		VerifiedFile(long length, long lastModified, String sha1) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.sha1 = sha1;
+		}
+	}
 }
@@ -0,0 +1,247 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent record of the SHA-1 hashes of files in a cache directory, so unchanged files can be trusted without reading them
+ *
+ * <p>A file is only considered unchanged if its size, modify time and (where the file system has them) inode all still match.
+ */
+public class ChecksumIndex {
+	private static final String INDEX_NAME = "checksums.json";
+	private static final Type INDEX_TYPE = new TypeToken<Map<String, Entry>>() { }.getType();
+	private static final Map<Path, ChecksumIndex> INDEXES = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final Path indexFile;
+	private Map<String, Entry> entries;
+	private boolean dirty;
+
+	private ChecksumIndex(Path root) {
+		this.root = root;
+		this.indexFile = root.resolve(INDEX_NAME);
+	}
+
+	/**
+	 * Get the index for the given directory, it will be loaded the first time it is used
+	 *
+	 * @param root The directory the index covers
+	 *
+	 * @return The index for the given directory
+	 */
+	public static ChecksumIndex forRoot(File root) {
+		return INDEXES.computeIfAbsent(root.getAbsoluteFile().toPath().normalize(), ChecksumIndex::new);
+	}
+
+	/**
+	 * @param file The file to find the index for
+	 *
+	 * @return The index covering the given file, or <code>null</code> if the file isn't in any known indexed directory
+	 */
+	static ChecksumIndex forFile(File file) {
+		Path path = file.getAbsoluteFile().toPath().normalize();
+
+		for (ChecksumIndex index : INDEXES.values()) {
+			if (path.startsWith(index.root)) {
+				return index;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Write out every index which has changed since it was loaded
+	 */
+	public static void saveAll() {
+		for (ChecksumIndex index : INDEXES.values()) {
+			index.save();
+		}
+	}
+
+	/**
+	 * @param file The file to look up
+	 *
+	 * @return The last verified SHA-1 hash of the given file if it hasn't changed since, otherwise <code>null</code>
+	 */
+	public synchronized String get(File file) {
+		String key = keyFor(file);
+		Entry entry = getEntries().get(key);
+		if (entry == null) return null;
+
+		Entry current = Entry.read(file.toPath(), entry.sha1);
+		if (!entry.equals(current)) {
+			getEntries().remove(key);
+			dirty = true;
+			return null;
+		}
+
+		return entry.sha1;
+	}
+
+	/**
+	 * Record the given SHA-1 hash as the verified hash for the given file as it is now
+	 *
+	 * @param file The file which has been hashed
+	 * @param sha1 The SHA-1 hash of the file's current contents, in lower case hexadecimal
+	 */
+	public synchronized void put(File file, String sha1) {
+		Entry entry = Entry.read(file.toPath(), sha1);
+
+		if (entry != null) {
+			if (!entry.equals(getEntries().put(keyFor(file), entry))) dirty = true;
+		} else if (getEntries().remove(keyFor(file)) != null) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forget the verified hash of the given file, if there is one
+	 *
+	 * @param file The file which should no longer be trusted
+	 */
+	public synchronized void remove(File file) {
+		if (getEntries().remove(keyFor(file)) != null) dirty = true;
+	}
+
+	/**
+	 * @return A snapshot of every file which has a recorded hash, mapped to that hash
+	 */
+	public synchronized Map<File, String> getRecordedHashes() {
+		Map<File, String> out = new HashMap<>();
+
+		for (Map.Entry<String, Entry> entry : getEntries().entrySet()) {
+			out.put(root.resolve(entry.getKey()).toFile(), entry.getValue().sha1);
+		}
+
+		return Collections.unmodifiableMap(out);
+	}
+
+	/**
+	 * Write the index out if it has changed since it was loaded
+	 */
+	public synchronized void save() {
+		if (!dirty) return;
+
+		try {
+			Path temp = indexFile.resolveSibling(INDEX_NAME + ".tmp");
+
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				new Gson().toJson(entries, INDEX_TYPE, writer);
+			}
+
+			try {
+				Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			dirty = false;
+		} catch (IOException e) {
+			//Not the end of the world, the files will just be hashed again next time
+			e.printStackTrace();
+		}
+	}
+
+	private Map<String, Entry> getEntries() {
+		if (entries == null) {
+			entries = new HashMap<>();
+
+			if (Files.exists(indexFile)) {
+				try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+					Map<String, Entry> loaded = new Gson().fromJson(reader, INDEX_TYPE);
+					if (loaded != null) entries.putAll(loaded);
+				} catch (IOException | JsonParseException e) {
+					//It'll be rebuilt as files are hashed
+					e.printStackTrace();
+					dirty = true;
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	private String keyFor(File file) {
+		return root.relativize(file.getAbsoluteFile().toPath().normalize()).toString().replace(File.separatorChar, '/');
+	}
+
+	private static class Entry {
+		long size, modified;
+		String inode;
+		String sha1;
+
+		static Entry read(Path path, String sha1) {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (IOException e) {
+				return null;
+			}
+
+			Entry entry = new Entry();
+			entry.size = attributes.size();
+			entry.modified = attributes.lastModifiedTime().toMillis();
+			entry.inode = attributes.fileKey() != null ? attributes.fileKey().toString() : null;
+			entry.sha1 = sha1;
+			return entry;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Entry)) return false;
+
+			Entry that = (Entry) obj;
+			return size == that.size && modified == that.modified && Objects.equals(inode, that.inode) && Objects.equals(sha1, that.sha1);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(size, modified, inode, sha1);
+		}
+	}
+}
@@ -36,6 +36,9 @@ public class Constants {
 
 	public static final String LIBRARIES_BASE = "https://libraries.minecraft.net/";
 	public static final String RESOURCES_BASE = "http://resources.download.minecraft.net/";
+	public static final String LAUNCHER_META_BASE = "https://launchermeta.mojang.com/";
+	public static final String LAUNCHER_BASE = "https://launcher.mojang.com/";
+	public static final String VERSION_MANIFEST = LAUNCHER_META_BASE + "mc/game/version_manifest.json";
 
 	public static final String SYSTEM_ARCH = System.getProperty("os.arch").equals("64") ? "64" : "32";
 
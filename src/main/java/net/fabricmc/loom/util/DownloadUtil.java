@@ -24,19 +24,71 @@
 package net.fabricmc.loom.util;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 
 import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
 import org.gradle.api.logging.Logger;
 
 import com.google.common.io.Files;
 
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.download.DownloadMetadata;
+import net.fabricmc.loom.util.download.DownloadResponse;
+import net.fabricmc.loom.util.download.DownloadSources;
+import net.fabricmc.loom.util.download.DownloadStats;
+import net.fabricmc.loom.util.download.DownloadTransport;
+import net.fabricmc.loom.util.download.HedgingTransport;
+import net.fabricmc.loom.util.download.UrlConnectionTransport;
+
 public class DownloadUtil {
+	/** How many times a download which doesn't match the expected hash will be tried */
+	private static final int MAX_HASH_ATTEMPTS = 3;
+	/** Not in {@link HttpURLConnection}'s list of constants */
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	/** Also not in {@link HttpURLConnection}'s list of constants */
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	/** How long to wait before the first retry of a failed download in milliseconds, doubling each time after */
+	private static final long RETRY_BASE_DELAY = 500;
+	/** The longest to wait before retrying a failed download in milliseconds */
+	private static final long RETRY_MAX_DELAY = 30_000;
+	private static final int DEFAULT_RETRIES = 3;
+	private static final DownloadTransport DEFAULT_TRANSPORT = new UrlConnectionTransport();
+	/** The builds which have already set up the transport, retries and sources */
+	private static final Set<Gradle> CONFIGURED_BUILDS = Collections.newSetFromMap(new WeakHashMap<>());
+	private static volatile int maxRetries = DEFAULT_RETRIES;
+	private static volatile DownloadTransport transport = DEFAULT_TRANSPORT;
+	private static volatile DownloadSources sources = DownloadSources.DIRECT;
+
 	/**
 	 * Download from the given {@link URL} to the given {@link File} so long as there are differences between them
 	 *
@@ -61,104 +113,506 @@ public class DownloadUtil {
 	 * @throws IOException If an exception occurs during the process
 	 */
 	public static void downloadIfChanged(URL from, File to, Logger logger, boolean quiet) throws IOException {
-		HttpURLConnection connection = (HttpURLConnection) from.openConnection();
+		downloadIfChanged(from, to, null, logger, quiet);
+	}
 
-		//If the output already exists we'll use it's last modified time
-		if (to.exists()) connection.setIfModifiedSince(to.lastModified());
+	/**
+	 * Download from the given {@link URL} to the given {@link File} so long as it doesn't already match the given hash
+	 *
+	 * <p>The hash is worked out as the file downloads, so it doesn't need to be read again to check it. Downloads which don't
+	 * match the hash are thrown away and tried again, and the hash of those which do is remembered by {@link Checksum}.
+	 *
+	 * <p>If the hash is known the shared cache is checked first, then any mirrors for the URL are tried in order before the URL itself.
+	 *
+	 * @param from The URL of the file to be downloaded
+	 * @param to The destination to be saved to, and compared against if it exists
+	 * @param sha1 The expected SHA-1 hash of the file, or <code>null</code> to compare against the server's modify time and ETag
+	 * @param logger The logger to print information to, typically from {@link Project#getLogger()}
+	 * @param quiet Whether to only print warnings (when <code>true</code>) or everything
+	 *
+	 * @throws IOException If an exception occurs during the process, or the file doesn't match the hash after several attempts
+	 */
+	public static void downloadIfChanged(URL from, File to, String sha1, Logger logger, boolean quiet) throws IOException {
+		if (sha1 != null && to.exists() && Checksum.equals(to, sha1)) {
+			if (!quiet) logger.info("'{}' already matches {}, skipping.", to, sha1);
+			return;
+		}
 
-		//Try use the ETag if there's one for the file we're downloading
-		String etag = loadETag(to, logger);
-		if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+		DownloadSources sources = DownloadUtil.sources;
+		if (sha1 != null) {
+			File shared = sources.getShared(sha1);
+			if (shared != null && copyShared(shared, to, sha1, logger, quiet)) return;
+		}
 
-		//We want to download gzip compressed stuff
-		connection.setRequestProperty("Accept-Encoding", "gzip");
+		List<URL> candidates = sources.getCandidates(from, sha1);
+		IOException failure = null;
 
-		//We shouldn't need to set a user agent, but it's here just in case
-		//connection.setRequestProperty("User-Agent", null);
+		for (Iterator<URL> it = candidates.iterator(); it.hasNext();) {
+			URL candidate = it.next();
 
-		//Try make the connection, it will hang here if the connection is bad
-		connection.connect();
+			try {
+				downloadFrom(candidate, to, sha1, logger, quiet);
+				break;
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
 
-		int code = connection.getResponseCode();
-		if ((code < 200 || code > 299) && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
-			//Didn't get what we expected
-			throw new IOException(connection.getResponseMessage());
+				if (!it.hasNext()) throw failure;
+				logger.warn("Failed to download {} from {} ({}), trying next source", to.getName(), candidate, e.getMessage());
+			}
 		}
 
-		long modifyTime = connection.getHeaderFieldDate("Last-Modified", -1);
-		if (to.exists() && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && to.lastModified() >= modifyTime)) {
-			if (!quiet) logger.info("'{}' Not Modified, skipping.", to);
-			return; //What we've got is already fine
+		if (sha1 != null) {
+			try {
+				sources.share(to, sha1);
+			} catch (IOException e) {
+				logger.warn("Unable to add {} to the shared cache", to, e);
+			}
 		}
+	}
 
-		long contentLength = connection.getContentLengthLong();
-		if (!quiet && contentLength >= 0) logger.info("'{}' Changed, downloading {}", to, toNiceSize(contentLength));
+	private static void downloadFrom(URL from, File to, String sha1, Logger logger, boolean quiet) throws IOException {
+		File partial = getPartialFile(to);
+		int hashAttempts = 1;
+		int retries = 0;
 
-		try {//Try download to the output
-			FileUtils.copyInputStreamToFile(connection.getInputStream(), to);
-		} catch (IOException e) {
-			to.delete(); //Probably isn't good if it fails to copy/save
-			throw e;
+		while (true) {
+			try {
+				if (!download(from, to, partial, sha1, logger, quiet, true)) {
+					//The server didn't like the range we asked for, the partial download must be bad
+					deletePartial(partial);
+					download(from, to, partial, sha1, logger, quiet, false);
+				}
+
+				return;
+			} catch (ChecksumMismatchException e) {
+				if (hashAttempts >= MAX_HASH_ATTEMPTS) throw e;
+
+				logger.warn("{}, retrying (attempt {} of {})", e.getMessage(), ++hashAttempts, MAX_HASH_ATTEMPTS);
+			} catch (IOException e) {
+				if (retries >= maxRetries || !isRetryable(e)) throw e;
+
+				//Back off exponentially, with some jitter so lots of failed downloads don't all come back at once
+				long delay = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << retries++);
+				delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+				DownloadStats.forHost(from.getHost()).recordRetry();
+				logger.info("Download of {} failed ({}), retrying in {}ms (retry {} of {})", from, e.getMessage(), delay, retries, maxRetries);
+
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					InterruptedIOException cancelled = new InterruptedIOException("Interrupted waiting to retry " + from);
+					cancelled.addSuppressed(e);
+					throw cancelled;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param e The exception a download failed with
+	 *
+	 * @return Whether trying the download again might work
+	 */
+	private static boolean isRetryable(IOException e) {
+		if (e instanceof HttpStatusException) {
+			int code = ((HttpStatusException) e).code;
+			return code >= 500 || code == HTTP_TOO_MANY_REQUESTS || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
 		}
 
-		//Set the modify time to match the server's (if we know it)
-		if (modifyTime > 0) to.setLastModified(modifyTime);
+		//Timeouts are worth trying again, being interrupted in any other way isn't
+		return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+	}
 
-		//Save the ETag (if we know it)
-		String eTag = connection.getHeaderField("ETag");
-		if (eTag != null) {
+	/**
+	 * Copy the given file from the shared cache to the given destination, checking it has the expected hash on the way
+	 *
+	 * @return Whether the file was copied, if not it will need to be downloaded
+	 */
+	private static boolean copyShared(File shared, File to, String sha1, Logger logger, boolean quiet) throws IOException {
+		File partial = getPartialFile(to);
+		deletePartial(partial);
+		makeParent(partial);
+
+		MessageDigest digest = newSha1();
+		try (InputStream in = new DigestInputStream(new FileInputStream(shared), digest)) {
+			java.nio.file.Files.copy(in, partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		String hash = Checksum.toHex(digest.digest());
+		if (!hash.equals(sha1)) {
+			deletePartial(partial);
+			logger.warn("Shared copy of {} has hash {} rather than {}, downloading it instead", to.getName(), hash, sha1);
+			return false;
+		}
+
+		publish(partial, to);
+		Checksum.markVerified(to, hash);
+		DownloadMetadata.forFile(to).put(to, new DownloadMetadata.Entry(shared.toURI().toString(), null, -1, to.length(), hash));
+		if (!quiet) logger.info("'{}' copied from the shared cache", to);
+
+		return true;
+	}
+
+	/**
+	 * Download from the given {@link URL} via the given partial file, resuming it if possible
+	 *
+	 * @return <code>false</code> if the server rejected the requested range, <code>true</code> otherwise
+	 */
+	private static boolean download(URL from, File to, File partial, String sha1, Logger logger, boolean quiet, boolean allowResume) throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		DownloadMetadata metadata = DownloadMetadata.forFile(to);
+
+		//If we know what the file should be, then we already know the output is wrong (it was checked before getting here)
+		//So asking if it's changed is pointless, and a Not Modified or old Last-Modified mustn't let the wrong file be kept
+		DownloadMetadata.Entry known = sha1 == null && to.exists() ? loadMetadata(metadata, to, logger) : null;
+		//Otherwise only trust what we know about the output if it's still the size it was downloaded as
+		if (known != null && known.getSize() != to.length()) known = null;
+		long knownModified = known != null ? known.getLastModified() : -1;
+
+		if (known != null) {
+			//If the output already exists we'll use the server's last modified time for it
+			if (knownModified > 0) headers.put("If-Modified-Since", toHttpDate(knownModified));
+
+			//Try use the ETag if there's one for the file we're downloading
+			if (known.getETag() != null) headers.put("If-None-Match", known.getETag());
+		}
+
+		//If there's an interrupted download we'll try carry on from where it stopped, so long as it's still the same file
+		long resumeFrom = 0;
+		DownloadMetadata.Entry partialKnown = allowResume && partial.exists() ? loadMetadata(metadata, partial, logger) : null;
+		String partialETag = partialKnown != null ? partialKnown.getETag() : null;
+		if (partialETag != null && partial.length() > 0) {
+			resumeFrom = partial.length();
+			headers.put("Range", "bytes=" + resumeFrom + '-');
+			headers.put("If-Range", partialETag);
+
+			//Ranges are counted in the encoded bytes, so the body has to come back as it is on the server
+			headers.put("Accept-Encoding", "identity");
+		} else {
+			//We want to download gzip compressed stuff
+			headers.put("Accept-Encoding", "gzip");
+		}
+
+		//We shouldn't need to set a user agent, but it's here just in case
+		//headers.put("User-Agent", null);
+
+		try (DownloadResponse response = transport.get(from, headers)) {
+			int code = response.getCode();
+			if (code == HTTP_RANGE_NOT_SATISFIABLE && resumeFrom > 0) {
+				return false;
+			}
+
+			if ((code < 200 || code > 299) && code != HttpURLConnection.HTTP_NOT_MODIFIED) {
+				//Didn't get what we expected
+				throw new HttpStatusException(code, "Server returned " + code + ' ' + response.getMessage() + " for " + from);
+			}
+
+			long modifyTime = response.getDateHeader("Last-Modified", -1);
+			if (known != null && (code == HttpURLConnection.HTTP_NOT_MODIFIED || modifyTime > 0 && knownModified >= modifyTime)) {
+				if (!quiet) logger.info("'{}' Not Modified, skipping.", to);
+				return true; //What we've got is already fine
+			}
+
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				//Nothing was asked to be compared against, so there's no body to get the file from
+				throw new IOException("Server returned an unrequested " + code + ' ' + response.getMessage() + " for " + from);
+			}
+
+			//The server is free to ignore the range and send everything, if it does we have to start again
+			boolean resuming = code == HttpURLConnection.HTTP_PARTIAL && resumeFrom > 0;
+			String range = response.getHeader("Content-Range");
+			if (resuming && (range == null || !range.startsWith("bytes " + resumeFrom + '-'))) {
+				throw new IOException("Unexpected range " + range + " when resuming from " + resumeFrom);
+			}
+
+			long contentLength = response.getContentLength();
+			if (!quiet && contentLength >= 0) {
+				if (resuming) {
+					logger.info("'{}' Changed, resuming download with {} left", to, toNiceSize(contentLength));
+				} else {
+					logger.info("'{}' Changed, downloading {}", to, toNiceSize(contentLength));
+				}
+			}
+
+			String eTag = response.getHeader("ETag");
 			//Log if we get a weak ETag and we're not on quiet
-			if (!quiet && eTag.startsWith("W/")) logger.warn("Weak ETag found.");
+			if (!quiet && eTag != null && eTag.startsWith("W/")) logger.warn("Weak ETag found.");
+
+			//Only strong ETags for unencoded bodies can be used to resume, so only remember those for the partial download
+			boolean encoded = "gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"));
+			boolean resumable = eTag != null && !eTag.startsWith("W/") && !encoded;
+			if (resumable) {
+				if (!resuming) metadata.put(partial, new DownloadMetadata.Entry(from.toString(), eTag, modifyTime, -1, null));
+			} else {
+				metadata.remove(partial);
+			}
+
+			//Try download to the partial file, it's left behind if this fails so we can try carry on next time
+			makeParent(partial);
+
+			MessageDigest digest = sha1 != null ? newSha1() : null;
+			if (digest != null && resuming) {
+				//The part we already have needs to be included in the hash
+				try (InputStream in = new DigestInputStream(new FileInputStream(partial), digest)) {
+					IOUtils.copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+				}
+			}
+
+			try (InputStream in = digest != null ? new DigestInputStream(response.getBody(), digest) : response.getBody(); OutputStream out = new FileOutputStream(partial, resuming)) {
+				DownloadStats.forHost(from.getHost()).recordBytes(IOUtils.copyLarge(in, out));
+			} catch (IOException e) {
+				if (!resumable) partial.delete(); //Can't carry on without the ETag, so it's no use keeping
+				throw e;
+			}
+
+			//Check that we got everything the server said it was sending
+			long expected = contentLength >= 0 && !encoded ? (resuming ? resumeFrom : 0) + contentLength : -1;
+			if (expected >= 0 && partial.length() != expected) {
+				long got = partial.length();
+				deletePartial(partial);
+				throw new IOException("Download of " + from + " was truncated, expected " + expected + " bytes but got " + got);
+			}
+
+			String hash = digest != null ? Checksum.toHex(digest.digest()) : null;
+			if (hash != null && !hash.equals(sha1)) {
+				//Whatever we've got is wrong, so there's no point keeping it to resume from
+				deletePartial(partial);
+				throw new ChecksumMismatchException("Download of " + from + " has hash " + hash + " rather than " + sha1);
+			}
+
+			//The download is complete, so move it into place in one go
+			publish(partial, to);
+
+			//The file was hashed on the way in, so it doesn't need to be again
+			if (hash != null) Checksum.markVerified(to, hash);
+
+			//Remember the server's ETag and modify time (if we know them) to ask if it's changed next time
+			metadata.put(to, new DownloadMetadata.Entry(from.toString(), eTag, modifyTime, to.length(), hash));
+			metadata.remove(partial);
 
-			saveETag(to, eTag, logger);
+			return true;
+		}
+	}
+
+	private static void makeParent(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create directory " + parent);
+		}
+	}
+
+	private static MessageDigest newSha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform is meant to support SHA-1", e);
 		}
 	}
 
+	/**
+	 * Move the given finished download to its final location, replacing it if it already exists
+	 *
+	 * @param partial The finished download
+	 * @param to The location the download is meant to end up at
+	 *
+	 * @throws IOException If the file can't be moved
+	 */
+	private static void publish(File partial, File to) throws IOException {
+		try {
+			java.nio.file.Files.move(partial.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			//The partial file is always next to the output, so this shouldn't happen, but we can still go on without it
+			java.nio.file.Files.move(partial.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Set up the transport, retries and sources for the build the given project is part of, if it hasn't been already
+	 *
+	 * <p>These are shared by every project in the build, so are taken from the {@link LoomGradleExtension} of whichever project
+	 * asks first. They're put back to the defaults once the build finishes, stopping the transport's threads along with it.
+	 *
+	 * @param project A project in the build downloads are being set up for
+	 * @param sources The mirrors and shared cache to use for downloads during the build
+	 */
+	public static void configureForBuild(Project project, DownloadSources sources) {
+		Gradle gradle = project.getGradle();
+
+		synchronized (CONFIGURED_BUILDS) {
+			if (!CONFIGURED_BUILDS.add(gradle)) return;
+		}
+
+		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+		HedgingTransport transport = new HedgingTransport(new UrlConnectionTransport(extension.maxConnectionsPerHost, extension.connectTimeout, extension.readTimeout), extension.hedgePercentile);
+		setTransport(transport);
+		setMaxRetries(extension.downloadRetries);
+		setSources(sources);
+
+		gradle.buildFinished(result -> {
+			synchronized (CONFIGURED_BUILDS) {
+				CONFIGURED_BUILDS.remove(gradle);
+			}
+
+			//Only put the defaults back if nothing else has changed them since
+			if (DownloadUtil.transport == transport) {
+				DownloadUtil.transport = DEFAULT_TRANSPORT;
+				DownloadUtil.maxRetries = DEFAULT_RETRIES;
+				DownloadUtil.sources = DownloadSources.DIRECT;
+			}
+
+			transport.shutdown();
+		});
+	}
+
+	/**
+	 * Change the transport used to make requests, such as to change the connection pool size
+	 *
+	 * @param transport The transport to use for all future downloads
+	 */
+	public static void setTransport(DownloadTransport transport) {
+		DownloadUtil.transport = Objects.requireNonNull(transport, "transport");
+	}
+
+	/**
+	 * @return The transport currently used to make requests
+	 */
+	public static DownloadTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Change how many times a download which fails in a way that might not happen again is retried
+	 *
+	 * @param retries The number of retries to allow for each download after the first attempt
+	 */
+	public static void setMaxRetries(int retries) {
+		if (retries < 0) throw new IllegalArgumentException("Retries can't be negative, got " + retries);
+		maxRetries = retries;
+	}
+
+	/**
+	 * Change where files can be downloaded from besides their normal URL
+	 *
+	 * @param sources The mirrors and shared cache to use for all future downloads
+	 */
+	public static void setSources(DownloadSources sources) {
+		DownloadUtil.sources = Objects.requireNonNull(sources, "sources");
+	}
+
+	/**
+	 * @return The mirrors and shared cache currently used for downloads
+	 */
+	public static DownloadSources getSources() {
+		return sources;
+	}
+
+	/**
+	 * Format the given time as a HTTP date, as used by the <code>If-Modified-Since</code> header
+	 *
+	 * @param time The time to format in milliseconds since the epoch
+	 *
+	 * @return The given time formatted in RFC 1123 format
+	 */
+	private static String toHttpDate(long time) {
+		return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
+	}
+
 	/**
 	 * Creates a new file in the same directory as the given file with <code>.etag</code> on the end of the name
 	 *
 	 * @param file The file to produce the ETag for
 	 *
-	 * @return The (uncreated) ETag file for the given file
+	 * @return The (uncreated) ETag file for the given file, which is only used to move over ETags from before {@link DownloadMetadata}
 	 */
 	private static File getETagFile(File file) {
 		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".etag");
 	}
 
 	/**
-	 * Attempt to load an ETag for the given file, if it exists
+	 * Creates a new file in the same directory as the given file with <code>.part</code> on the end of the name
 	 *
-	 * @param to The file to load an ETag for
-	 * @param logger The logger to print errors to if it goes wrong
+	 * @param file The file to produce the partial download file for
 	 *
-	 * @return The ETag for the given file, or <code>null</code> if it doesn't exist
+	 * @return The (uncreated) partial download file for the given file
 	 */
-	private static String loadETag(File to, Logger logger) {
-		File eTagFile = getETagFile(to);
-		if (!eTagFile.exists()) return null;
+	private static File getPartialFile(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".part");
+	}
 
-		try {
-			return Files.asCharSource(eTagFile, StandardCharsets.UTF_8).read();
-		} catch (IOException e) {
-			logger.warn("Error reading ETag file '{}'.", eTagFile);
-			return null;
+	/**
+	 * Delete the given partial download file along with its metadata, if they exist
+	 *
+	 * @param partial The partial download file to delete
+	 */
+	private static void deletePartial(File partial) {
+		if (partial.exists()) {
+			partial.delete();
 		}
+
+		forget(partial);
 	}
 
 	/**
-	 * Saves the given ETag for the given file, replacing it if it already exists
+	 * Load the metadata for the given file, moving over an older <code>.etag</code> file if there is one
 	 *
-	 * @param to The file to save the ETag for
-	 * @param eTag The ETag to be saved
+	 * @param metadata The store covering the given file
+	 * @param file The file to load the metadata of
 	 * @param logger The logger to print errors to if it goes wrong
+	 *
+	 * @return The metadata of the given file, or <code>null</code> if nothing is known about it
 	 */
-	private static void saveETag(File to, String eTag, Logger logger) {
-		File eTagFile = getETagFile(to);
+	private static DownloadMetadata.Entry loadMetadata(DownloadMetadata metadata, File file, Logger logger) {
+		DownloadMetadata.Entry entry = metadata.get(file);
+		if (entry != null) return entry;
+
+		String eTag = null;
+		File eTagFile = getETagFile(file);
+		if (eTagFile.exists()) {
+			try {
+				eTag = Files.asCharSource(eTagFile, StandardCharsets.UTF_8).read();
+			} catch (IOException e) {
+				logger.warn("Error reading ETag file '{}'.", eTagFile);
+			}
+		}
+
+		boolean partial = file.getName().endsWith(".part");
+		if (eTag == null && partial) return null; //Can't resume without knowing it's the same file
+
+		//Older downloads had their modify time set to the server's, which is the best guess of it we have
+		entry = new DownloadMetadata.Entry(null, eTag, file.lastModified(), partial ? -1 : file.length(), null);
+
+		if (eTag != null) {
+			try {
+				metadata.put(file, entry);
+				eTagFile.delete();
+			} catch (IOException e) {
+				logger.warn("Error moving ETag file '{}'.", eTagFile, e);
+			}
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Forget the metadata for the given file, if there is any
+	 *
+	 * @param file The file to forget the metadata of
+	 */
+	private static void forget(File file) {
 		try {
-			if (!eTagFile.exists()) eTagFile.createNewFile();
-			Files.asCharSink(eTagFile, StandardCharsets.UTF_8).write(eTag);
+			DownloadMetadata.forFile(file).remove(file);
 		} catch (IOException e) {
-			logger.warn("Error saving ETag file '{}'.", eTagFile, e);
+			//Not the end of the world, it is only used if the file still exists and is the size it was downloaded as
+		}
+
+		File eTagFile = getETagFile(file);
+		if (eTagFile.exists()) {
+			eTagFile.delete();
 		}
 	}
 
@@ -182,7 +636,7 @@ public class DownloadUtil {
 	}
 
 	/**
-	 * Delete the file along with the corresponding ETag, if it exists.
+	 * Delete the file along with the corresponding metadata and any partial download, if they exist.
 	 *
 	 * @param file The file to delete.
 	 */
@@ -191,9 +645,25 @@ public class DownloadUtil {
 			file.delete();
 		}
 
-		File etagFile = getETagFile(file);
-		if (etagFile.exists()) {
-			etagFile.delete();
+		forget(file);
+		deletePartial(getPartialFile(file));
+	}
+
+	private static class HttpStatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+		final int code;
+
+		HttpStatusException(int code, String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+
+	private static class ChecksumMismatchException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ChecksumMismatchException(String message) {
+			super(message);
 		}
 	}
 }
\ No newline at end of file
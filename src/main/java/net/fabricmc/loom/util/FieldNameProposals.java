@@ -0,0 +1,235 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.common.hash.Hashing;
+import net.fabricmc.loom.util.zip.ZipIndex;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.stitch.util.FieldNameFinder;
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Proposes names for fields in the same way as Stitch's {@link net.fabricmc.stitch.commands.CommandProposeFieldNames}, but
+ * with the proposals cached by the merged jar's hash and the jar scanned on several threads
+ *
+ * <p>Stitch only considers the fields of a class from its own static initialiser, so the classes can be split between
+ * threads without changing the names found.
+ */
+public class FieldNameProposals {
+	/** Changed whenever the cached proposals need to be thrown away */
+	private static final int VERSION = 1;
+
+	/**
+	 * Add the proposed field names for the given jar to the given Tiny mappings
+	 *
+	 * @param mergedJar The merged Minecraft jar to find field names from
+	 * @param base The Tiny mappings to add the names to
+	 * @param output Where to write the Tiny mappings with the names added
+	 * @param cacheDir Where the proposed names are kept
+	 * @param logger The logger to report progress to
+	 *
+	 * @throws IOException If the proposed names can't be found or the mappings can't be written
+	 */
+	public static void propose(File mergedJar, MappingsSource base, Writer output, File cacheDir, Logger logger) throws IOException {
+		Map<EntryTriple, String> names = findNames(mergedJar, cacheDir, logger);
+		logger.info("Found " + names.size() + " interesting names.");
+
+		int replaced = applyNames(names, base, output);
+		logger.info("Replaced " + replaced + " names in the mappings.");
+	}
+
+	private static Map<EntryTriple, String> findNames(File mergedJar, File cacheDir, Logger logger) throws IOException {
+		//Stitch's own version changes which names it finds, so is part of the key along with the jar
+		String stitch = new File(FieldNameFinder.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getName();
+		String key = Hashing.sha1().newHasher()
+				.putInt(VERSION)
+				.putString(stitch, StandardCharsets.UTF_8)
+				.putBytes(com.google.common.io.Files.asByteSource(mergedJar).hash(Hashing.sha1()).asBytes())
+				.hash().toString();
+		File cache = new File(cacheDir, key + ".txt");
+
+		if (cache.exists()) {
+			try {
+				return readNames(cache);
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Unable to read cached field names from " + cache + ", finding them again", e);
+			}
+		}
+
+		Map<EntryTriple, String> names = scan(mergedJar);
+
+		try {
+			writeNames(names, cache);
+		} catch (IOException e) {
+			logger.warn("Unable to cache field names to " + cache, e);
+		}
+
+		return names;
+	}
+
+	private static Map<EntryTriple, String> scan(File mergedJar) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<List<byte[]>> shards = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			shards.add(new ArrayList<>());
+		}
+
+		try (ZipIndex jar = ZipIndex.open(mergedJar.toPath())) {
+			int next = 0;
+
+			for (ZipIndex.Entry entry : jar.getEntries()) {
+				if (!entry.getName().endsWith(".class")) continue;
+
+				shards.get(next++ % threads).add(jar.read(entry));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Map<EntryTriple, String>>> found = new ArrayList<>(threads);
+			for (List<byte[]> shard : shards) {
+				found.add(executor.submit(() -> new FieldNameFinder().findNames(shard)));
+			}
+
+			Map<EntryTriple, String> names = new HashMap<>();
+			for (Future<Map<EntryTriple, String>> shard : found) {
+				names.putAll(shard.get());
+			}
+
+			return names;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to find field names in " + mergedJar, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted finding field names", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Map<EntryTriple, String> readNames(File cache) throws IOException {
+		Map<EntryTriple, String> names = new HashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(cache.toPath(), StandardCharsets.UTF_8)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.isEmpty()) continue;
+
+				String[] parts = line.split("\t");
+				if (parts.length != 4) throw new IOException("Malformed line in " + cache + ": " + line);
+				names.put(new EntryTriple(parts[0], parts[1], parts[2]), parts[3]);
+			}
+		}
+
+		return names;
+	}
+
+	private static void writeNames(Map<EntryTriple, String> names, File cache) throws IOException {
+		cache.getParentFile().mkdirs();
+		Path temp = Files.createTempFile(cache.getParentFile().toPath(), cache.getName(), ".tmp");
+
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<EntryTriple, String> entry : names.entrySet()) {
+					EntryTriple field = entry.getKey();
+					writer.write(field.getOwner() + '\t' + field.getName() + '\t' + field.getDesc() + '\t' + entry.getValue());
+					writer.newLine();
+				}
+			}
+
+			try {
+				Files.move(temp, cache.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Replace the named name of every field which doesn't have one yet (so is still <code>field_</code>) with its proposed
+	 * name, if there is one
+	 *
+	 * @return How many names were replaced
+	 */
+	private static int applyNames(Map<EntryTriple, String> names, MappingsSource base, Writer writer) throws IOException {
+		int replaced = 0;
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(base.openTiny(), StandardCharsets.UTF_8))) {
+			int officialColumn = -1;
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] columns = line.split("\t");
+
+				if (officialColumn < 0) {
+					if (columns.length < 4) throw new IOException("Invalid mapping file " + base);
+
+					for (int i = 0; i < columns.length; i++) {
+						if ("official".equals(columns[i])) {
+							officialColumn = i;
+							break;
+						}
+					}
+
+					if (officialColumn < 0) throw new IOException("Could not find the official namespace in " + base);
+				} else if ("FIELD".equals(columns[0])) {
+					//FIELD owner desc names..., where the names start from the first namespace
+					String name = names.get(new EntryTriple(columns[1], columns[2 + officialColumn], columns[2]));
+
+					if (name != null && columns[columns.length - 1].startsWith("field_")) {
+						columns[columns.length - 1] = name;
+						line = String.join("\t", columns);
+						replaced++;
+					}
+				}
+
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+
+		return replaced;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import java.util.zip.Deflater;
+
+/**
+ * How much each kind of jar Loom writes is compressed, as a {@link Deflater} level
+ *
+ * <p>Jars which are only ever read back on this machine default to being stored, as compressing them only costs time
+ * writing them and again every time they are read. Files copied straight across from another jar keep whatever compression
+ * they already had.
+ */
+public class JarCompression {
+	public static final int STORED = Deflater.NO_COMPRESSION;
+	public static final int FAST = Deflater.BEST_SPEED;
+	public static final int DEFAULT = Deflater.DEFAULT_COMPRESSION;
+	public static final int BEST = Deflater.BEST_COMPRESSION;
+
+	/** The merged client and server jar */
+	public int merged = STORED;
+	/** The intermediary and named Minecraft jars */
+	public int mapped = STORED;
+	/** The named Minecraft jar with line numbers matched to the decompiled sources */
+	public int lineMapped = STORED;
+	/** Mod dependencies remapped into the remapped mod cache */
+	public int remappedMods = STORED;
+	/** The output of remapJar, which is what gets published */
+	public int remapJar = DEFAULT;
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds files which an installation of the official launcher already has, so they can be used rather than downloaded again
+ *
+ * <p>Nothing is used unless it matches the expected SHA-1 hash. Files are hard linked into place where possible, as nothing
+ * in either cache is changed in place once written, otherwise they are copied.
+ */
+public class LauncherFiles {
+	private final List<File> roots = new ArrayList<>();
+
+	/**
+	 * @param roots The launcher directories to look in, those which don't exist are ignored
+	 */
+	public LauncherFiles(List<File> roots) {
+		for (File root : roots) {
+			if (root.isDirectory()) this.roots.add(root);
+		}
+	}
+
+	/**
+	 * @return Where the official launcher keeps its files by default on this system
+	 */
+	public static List<File> getDefaultDirectories() {
+		String home = System.getProperty("user.home", ".");
+
+		switch (OperatingSystem.getOS()) {
+		case "windows": {
+			String appData = System.getenv("APPDATA");
+			return Collections.singletonList(new File(appData != null ? appData : home, ".minecraft"));
+		}
+
+		case "osx":
+			return Collections.singletonList(new File(home, "Library" + File.separator + "Application Support" + File.separator + "minecraft"));
+
+		default:
+			return Collections.singletonList(new File(home, ".minecraft"));
+		}
+	}
+
+	public boolean isEmpty() {
+		return roots.isEmpty();
+	}
+
+	/**
+	 * @param version The Minecraft version
+	 *
+	 * @return The launcher's copy of the client jar for the given version, or <code>null</code> if there isn't one
+	 */
+	public File findClientJar(String version) {
+		return find("versions" + File.separator + version + File.separator + version + ".jar");
+	}
+
+	/**
+	 * @param library The library to find
+	 *
+	 * @return The launcher's copy of the given library, or <code>null</code> if there isn't one
+	 */
+	public File findLibrary(MinecraftVersionInfo.Library library) {
+		for (File root : roots) {
+			File file = library.getFile(new File(root, "libraries"));
+			if (file.isFile()) return file;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param sha1 The hash of the asset object
+	 *
+	 * @return The launcher's copy of the asset object with the given hash, or <code>null</code> if there isn't one
+	 */
+	public File findAsset(String sha1) {
+		return find("assets" + File.separator + "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1);
+	}
+
+	private File find(String path) {
+		for (File root : roots) {
+			File file = new File(root, path);
+			if (file.isFile()) return file;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Put the given launcher file at the given destination, so long as it has the expected hash
+	 *
+	 * @param source The launcher's copy of the file, or <code>null</code> if it doesn't have one
+	 * @param to Where the file is wanted
+	 * @param sha1 The expected SHA-1 hash of the file
+	 * @param logger The logger to print information to
+	 *
+	 * @return Whether the file is now at the destination, if not it will need to be downloaded
+	 */
+	public static boolean reuse(File source, File to, String sha1, Logger logger) {
+		if (source == null || sha1 == null || sha1.isEmpty() || !Checksum.equals(source, sha1)) return false;
+
+		Path target = to.toPath();
+		Path temp = target.resolveSibling(to.getName() + ".link");
+
+		try {
+			Files.createDirectories(target.getParent());
+			Files.deleteIfExists(temp);
+
+			try {
+				Files.createLink(temp, source.toPath());
+			} catch (IOException | UnsupportedOperationException e) {
+				//Most likely the launcher is on a different drive, a copy is just as good if slower
+				Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to reuse {} from the launcher, downloading it instead", source, e);
+			return false;
+		} finally {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (IOException e) {
+				//Not important, it'll be replaced next time
+			}
+		}
+
+		Checksum.markVerified(to, sha1);
+		logger.debug("Reused {} from the launcher", source);
+		return true;
+	}
+}
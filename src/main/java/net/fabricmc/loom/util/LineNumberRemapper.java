@@ -25,6 +25,8 @@
 package net.fabricmc.loom.util;
 
 import net.fabricmc.loom.util.progress.ProgressLogger;
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipIndex;
 import org.gradle.api.logging.Logger;
 import org.objectweb.asm.*;
 
@@ -115,6 +117,39 @@ public class LineNumberRemapper {
         });
     }
 
+    /**
+     * Adjust the classes in the input jar straight into the given writer, so the output is only compressed the once at its level
+     */
+    public void process(ProgressLogger logger, ZipIndex input, RawZipWriter output) throws IOException {
+        for (ZipIndex.Entry entry : input.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String rel = entry.getName();
+            if (rel.endsWith(".class")) {
+                String idx = rel.substring(0, rel.length() - 6);
+                if (logger != null) {
+                    logger.progress("Remapping " + idx);
+                }
+
+                int dollarPos = idx.indexOf('$'); //This makes the assumption that only Java classes are to be remapped.
+                if (dollarPos >= 0) {
+                    idx = idx.substring(0, dollarPos);
+                }
+                if (lineMap.containsKey(idx)) {
+                    ClassReader reader = new ClassReader(input.read(entry));
+                    ClassWriter writer = new ClassWriter(0);
+
+                    reader.accept(new LineNumberVisitor(Opcodes.ASM7, writer, lineMap.get(idx)), 0);
+                    output.write(rel, writer.toByteArray(), entry.getDosTime());
+                }
+
+            } else {
+                output.write(rel, input.read(entry), entry.getDosTime());
+            }
+        }
+    }
+
     private static class LineNumberVisitor extends ClassVisitor {
 
         private final RClass rClass;
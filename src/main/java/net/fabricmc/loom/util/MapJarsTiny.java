@@ -29,53 +29,139 @@ import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.providers.MappingsProvider;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.stitch.util.StitchUtil;
 import net.fabricmc.tinyremapper.TinyRemapper;
-import net.fabricmc.tinyremapper.TinyUtils;
 import org.gradle.api.Project;
+import org.objectweb.asm.ClassReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MapJarsTiny {
+	/** How many remapped classes can be waiting to be written before the remapper has to wait for the disk */
+	private static final int WRITE_QUEUE_SIZE = 256;
 
 	public void mapJars(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project) throws IOException {
-		String fromM = "official";
-
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
+		//Held strongly here so both namespaces use the same parsed mappings, rather than risking them being collected in between
+		Mappings mappings = mappingsProvider.getMappings();
 
 		Path[] classpath = mapProvider.getMapperPaths().stream()
 				.map(File::toPath)
 				.toArray(Path[]::new);
 
+		//Named is remapped from the intermediary jar rather than from official again, so the renaming official -> intermediary does is only done once
+		Map<String, Path> outputs = new LinkedHashMap<>();
+		outputs.put("intermediary", mapProvider.getIntermediaryJar().toPath());
+		outputs.put("named", mapProvider.getMappedJar().toPath());
+
+		String from = "official";
 		Path input = jarProvider.getMergedJar().toPath();
-		Path outputMapped = mapProvider.getMappedJar().toPath();
-		Path outputIntermediary = mapProvider.getIntermediaryJar().toPath();
-
-		for (String toM : Arrays.asList("named", "intermediary")) {
-			Path output = "named".equals(toM) ? outputMapped : outputIntermediary;
-
-			project.getLogger().lifecycle(":remapping minecraft (TinyRemapper, " + fromM + " -> " + toM + ")");
-
-			TinyRemapper remapper = TinyRemapper.newRemapper()
-					.withMappings(TinyRemapperMappingsHelper.create(mappingsProvider.getMappings(), fromM, toM))
-					.renameInvalidLocals(true)
-					.rebuildSourceFilenames(true)
-					.build();
-
-			try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
-				outputConsumer.addNonClassFiles(input);
-				remapper.readClassPath(classpath);
-				remapper.readInputs(input);
-				remapper.apply(outputConsumer);
-			} catch (Exception e) {
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (Map.Entry<String, Path> output : outputs.entrySet()) {
+			project.getLogger().lifecycle(":remapping minecraft (TinyRemapper, " + from + " -> " + output.getKey() + ")");
+
+			try (StitchUtil.FileSystemDelegate inputFs = StitchUtil.getJarFileSystem(input.toFile(), false)) {
+				remap(input, inputFs.get(), RemapCache.scan(input), output.getValue(), classpath, mappingsProvider, mappings, from, output.getKey(), new RemapCache(extension.getUserCache(), output.getKey()), threads, extension.compression.mapped);
+			} catch (IOException e) {
 				throw new RuntimeException("Failed to remap JAR", e);
-			} finally {
-				remapper.finish();
 			}
+
+			from = output.getKey();
+			input = output.getValue();
+		}
+
+		try {
+			RemapCache.prune(extension.getUserCache());
+		} catch (IOException e) {
+			project.getLogger().info("Unable to prune remapped class cache", e);
+		}
+	}
+
+	private static void remap(Path input, FileSystem inputFs, RemapCache.JarClasses classes, Path output, Path[] classpath, MappingsProvider mappingsProvider,
+			Mappings mappings, String from, String to, RemapCache cache, int threads, int compression) throws IOException {
+		Map<String, String> keys = RemapCache.computeKeys(classes, mappings, from, to);
+
+		//Remapped classes only know their new name, so need a way back to the key they were made from
+		Map<String, String> originalNames = new HashMap<>();
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			originalNames.put(entry.get(to), entry.get(from));
+		}
+
+		//Written to the side and moved into place once complete, so a failure part way doesn't leave a broken jar behind
+		Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+
+		try (PipelinedJarWriter outputConsumer = new PipelinedJarWriter(temp, WRITE_QUEUE_SIZE, compression)) {
+			//Resources are copied over whilst the classes are being sorted and remapped
+			outputConsumer.addNonClassFiles(input);
+
+			//Classes which need remapping again, and those which don't but still need to be on the classpath for the ones that do
+			//Both are read by the remapper straight out of the input jar
+			List<Path> changed = new ArrayList<>();
+			List<Path> unchanged = new ArrayList<>(Arrays.asList(classpath));
+
+			for (Map.Entry<String, String> entry : classes.getEntries().entrySet()) {
+				String key = keys.get(entry.getKey());
+				byte[] remapped = key != null ? cache.get(key) : null;
+
+				if (remapped != null) {
+					outputConsumer.add(new ClassReader(remapped).getClassName() + ".class", remapped);
+					unchanged.add(inputFs.getPath(entry.getValue()));
+				} else {
+					changed.add(inputFs.getPath(entry.getValue()));
+				}
+			}
+
+			//Nothing needs remapping if every class is already in the cache
+			if (!changed.isEmpty()) remapChanged(mappingsProvider, from, to, unchanged, changed, keys, originalNames, cache, outputConsumer, threads);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void remapChanged(MappingsProvider mappingsProvider, String from, String to, List<Path> classpath, List<Path> changed,
+			Map<String, String> keys, Map<String, String> originalNames, RemapCache cache, PipelinedJarWriter outputConsumer, int threads) throws IOException {
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+				.withMappings(mappingsProvider.getRemapperMappings(from, to))
+				.renameInvalidLocals(true)
+				.rebuildSourceFilenames(true)
+				.threads(threads)
+				.build();
+
+		try {
+			remapper.readClassPath(classpath.toArray(new Path[0]));
+			remapper.readInputs(changed.toArray(new Path[0]));
+			remapper.apply((name, data) -> {
+				outputConsumer.accept(name, data);
+
+				String key = keys.get(originalNames.getOrDefault(name, name));
+				if (key != null) {
+					try {
+						cache.put(key, data);
+					} catch (IOException e) {
+						//Not being able to cache the class only means it will be remapped again next time
+					}
+				}
+			});
+		} finally {
+			remapper.finish();
 		}
 	}
 }
@@ -0,0 +1,211 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.mappings.Mappings;
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds mappings (and anything built from them) for the length of a build, shared between every project and task in it
+ *
+ * <p>Entries are kept strongly until the total of their estimated sizes goes over the memory budget, at which point the
+ * least recently used are dropped. This means mappings are only ever loaded again when there genuinely isn't room for them,
+ * rather than whenever the garbage collector happens to clear a soft reference.
+ */
+public class MappingsRegistry {
+	private static final Map<Gradle, MappingsRegistry> REGISTRIES = new WeakHashMap<>();
+
+	private static class Entry {
+		final FutureTask<Object> value;
+		long size;
+
+		Entry(FutureTask<Object> value) {
+			this.value = value;
+		}
+	}
+
+	private final long budget;
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+	private long used;
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong(), loadTime = new AtomicLong();
+
+	MappingsRegistry(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Get the registry for the build the given project is part of, making it if this is the first time it's been asked for
+	 *
+	 * <p>The memory budget is taken from the {@link LoomGradleExtension#mappingsMemoryBudget} of whichever project asks first.
+	 */
+	public static MappingsRegistry get(Project project) {
+		Gradle gradle = project.getGradle();
+
+		synchronized (REGISTRIES) {
+			MappingsRegistry registry = REGISTRIES.get(gradle);
+
+			if (registry == null) {
+				LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
+				MappingsRegistry made = registry = new MappingsRegistry(extension.mappingsMemoryBudget);
+				REGISTRIES.put(gradle, registry);
+
+				gradle.buildFinished(result -> {
+					project.getLogger().info(made.toString());
+
+					synchronized (REGISTRIES) {
+						REGISTRIES.remove(gradle);
+					}
+					made.clear();
+				});
+			}
+
+			return registry;
+		}
+	}
+
+	/**
+	 * Load the given Tiny file, through its binary copy
+	 *
+	 * @param tiny The Tiny file to load
+	 * @param binary Where the binary copy of the Tiny file is kept
+	 *
+	 * @return The mappings from the Tiny file
+	 *
+	 * @throws IOException If the mappings can't be loaded
+	 */
+	public Mappings getMappings(File tiny, File binary) throws IOException {
+		//The compiled copy lives off the heap, so only the names which are used count towards the budget
+		return get("tiny:" + tiny.getAbsolutePath() + '@' + tiny.lastModified(), tiny.length() / 2, MappingsSource.fromTiny(tiny, binary)::load);
+	}
+
+	/**
+	 * Get the value for the given key, loading it if it isn't already held
+	 *
+	 * <p>If another thread is already loading the same key this waits for it rather than loading it again.
+	 *
+	 * @param key A key which changes whenever what would be loaded for it does
+	 * @param size Roughly how many bytes of the heap the value will take up
+	 * @param loader Loads the value for the key
+	 *
+	 * @return The value for the key
+	 *
+	 * @throws IOException If the value can't be loaded
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String key, long size, Callable<T> loader) throws IOException {
+		Entry entry;
+		boolean load = false;
+
+		synchronized (this) {
+			entry = entries.get(key);
+
+			if (entry == null) {
+				entry = new Entry(new FutureTask<>(loader::call));
+				//Counted straight away so whoever removes the entry, even if it fails whilst still loading, takes off what was added
+				entry.size = size;
+				used += size;
+				entries.put(key, entry);
+				load = true;
+			}
+		}
+
+		if (load) {
+			misses.incrementAndGet();
+			long start = System.nanoTime();
+
+			entry.value.run();
+			loadTime.addAndGet(System.nanoTime() - start);
+
+			synchronized (this) {
+				evict(entry);
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			return (T) entry.value.get();
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				//Failures aren't kept, so the next attempt tries to load again
+				if (entries.remove(key, entry)) used -= entry.size;
+			}
+
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException("Failed to load " + key, cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for " + key, e);
+		}
+	}
+
+	private void evict(Entry keep) {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && used > budget;) {
+			Entry entry = it.next();
+
+			//Anything still loading is left for its loader to evict around once it's done
+			if (entry != keep && entry.value.isDone()) {
+				it.remove();
+				used -= entry.size;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		used = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		List<String> parts = new ArrayList<>();
+		parts.add(hits.get() + " hits");
+		parts.add(misses.get() + " misses");
+		parts.add(evictions.get() + " evictions");
+		parts.add(loadTime.get() / 1_000_000 + "ms loading");
+		parts.add(used / (1024 * 1024) + "/" + budget / (1024 * 1024) + "MB held");
+
+		return "Mappings registry: " + String.join(", ", parts);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.loom.util.zip.ZipIndex;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MappingsProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Somewhere Tiny mappings can be read from, whether that's still inside the mappings jar or a file which has already been
+ * written out
+ */
+public abstract class MappingsSource {
+	/** Where the Tiny file is kept in a mappings jar */
+	public static final String JAR_ENTRY = "mappings/mappings.tiny";
+
+	/**
+	 * Open the Tiny text of the mappings
+	 *
+	 * @return A stream of the Tiny text, which must be closed once done with
+	 *
+	 * @throws IOException If the mappings can't be read
+	 */
+	public abstract InputStream openTiny() throws IOException;
+
+	/**
+	 * Load the mappings
+	 *
+	 * @return The mappings from this source
+	 *
+	 * @throws IOException If the mappings can't be read
+	 */
+	public Mappings load() throws IOException {
+		try (InputStream in = openTiny()) {
+			return MappingsProvider.readTinyMappings(in, false);
+		}
+	}
+
+	/**
+	 * @param tiny The Tiny text of some mappings
+	 *
+	 * @return The mappings read from the text
+	 *
+	 * @throws IOException If the text isn't valid Tiny
+	 */
+	public static Mappings load(byte[] tiny) throws IOException {
+		return MappingsProvider.readTinyMappings(new ByteArrayInputStream(tiny), false);
+	}
+
+	/**
+	 * @param jar A mappings jar, with the Tiny file at {@link #JAR_ENTRY}
+	 *
+	 * @return A source which reads the Tiny file out of the jar, decompressing it as it goes rather than extracting it first
+	 */
+	public static MappingsSource fromJar(File jar) {
+		return new MappingsSource() {
+			@Override
+			public InputStream openTiny() throws IOException {
+				ZipIndex index = ZipIndex.open(jar.toPath());
+
+				try {
+					ZipIndex.Entry entry = index.get(JAR_ENTRY);
+					if (entry == null) throw new IOException(jar + " doesn't contain " + JAR_ENTRY);
+
+					return new FilterInputStream(index.openStream(entry)) {
+						@Override
+						public void close() throws IOException {
+							try {
+								super.close();
+							} finally {
+								index.close();
+							}
+						}
+					};
+				} catch (IOException | RuntimeException e) {
+					index.close();
+					throw e;
+				}
+			}
+
+			@Override
+			public String toString() {
+				return jar.getName();
+			}
+		};
+	}
+
+	/**
+	 * @param tiny A Tiny file
+	 * @param binary Where the binary copy of the Tiny file is kept
+	 *
+	 * @return A source which reads the Tiny file, loading it through its binary copy
+	 */
+	public static MappingsSource fromTiny(File tiny, File binary) {
+		return new MappingsSource() {
+			@Override
+			public InputStream openTiny() throws IOException {
+				return new FileInputStream(tiny);
+			}
+
+			@Override
+			public Mappings load() throws IOException {
+				return BinaryMappings.load(tiny, binary);
+			}
+
+			@Override
+			public String toString() {
+				return tiny.getName();
+			}
+		};
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipIndex;
+import net.fabricmc.stitch.merge.ClassMerger;
+import net.fabricmc.stitch.util.SyntheticParameterClassVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Merges the client and server jars in the same way as Stitch's {@link net.fabricmc.stitch.merge.JarMerger}, but with the
+ * classes merged on a pool of threads and written out as they are finished
+ *
+ * <p>Resources are copied over from the input jars as they are without being recompressed, and the inputs are checked to
+ * be complete before anything is merged.
+ */
+public class MinecraftJarMerger {
+	private static final ClassMerger CLASS_MERGER = new ClassMerger();
+	/** The signatures of the original jars are no longer valid once merged, so the manifest is replaced without them */
+	private static final byte[] MANIFEST = "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8);
+
+	private interface Pending {
+		void writeTo(RawZipWriter out) throws IOException, InterruptedException, ExecutionException;
+	}
+
+	/**
+	 * Merge the given client and server jars together
+	 *
+	 * @param client The client jar
+	 * @param server The server jar
+	 * @param output Where to write the merged jar
+	 * @param threads How many threads to merge classes on
+	 * @param compression The {@link Deflater} level to compress the merged classes with
+	 *
+	 * @throws java.util.zip.ZipException If either input jar is truncated or otherwise malformed
+	 * @throws IOException If the jars can't be read or the merged jar can't be written
+	 */
+	public static void merge(File client, File server, File output, int threads, int compression) throws IOException {
+		Path temp = output.toPath().resolveSibling(output.getName() + ".tmp");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try (ZipIndex clientJar = ZipIndex.open(client.toPath()); ZipIndex serverJar = ZipIndex.open(server.toPath())) {
+			Set<String> names = new TreeSet<>();
+			for (ZipIndex.Entry entry : clientJar.getEntries()) {
+				if (!entry.isDirectory()) names.add(entry.getName());
+			}
+			for (ZipIndex.Entry entry : serverJar.getEntries()) {
+				if (!entry.isDirectory()) names.add(entry.getName());
+			}
+
+			try (RawZipWriter out = new RawZipWriter(temp, compression)) {
+				//The classes are merged in the background whilst being written out in order, so the jar comes out the same each time
+				List<Pending> pending = new ArrayList<>(names.size());
+
+				for (String name : names) {
+					ZipIndex.Entry clientEntry = clientJar.get(name);
+					ZipIndex.Entry serverEntry = serverJar.get(name);
+
+					if (name.endsWith(".class")) {
+						boolean isMinecraft = clientEntry != null || name.startsWith("net/minecraft") || !name.contains("/");
+						//The server bundles libraries which the client doesn't, so they're skipped
+						if (!isMinecraft) continue;
+
+						Future<RawZipWriter.Prepared> merged = executor.submit(() -> out.prepare(name, mergeClass(clientJar, clientEntry, serverJar, serverEntry), (clientEntry != null ? clientEntry : serverEntry).getDosTime()));
+						pending.add(writer -> writer.write(merged.get()));
+					} else if ("META-INF/MANIFEST.MF".equals(name)) {
+						pending.add(writer -> writer.write(name, MANIFEST, (clientEntry != null ? clientEntry : serverEntry).getDosTime()));
+					} else if (!name.startsWith("META-INF/") || !(name.endsWith(".SF") || name.endsWith(".RSA"))) {
+						//Resources are taken from the client when both sides have them, as Stitch does
+						if (clientEntry != null) {
+							pending.add(writer -> writer.copy(clientJar, clientEntry));
+						} else {
+							pending.add(writer -> writer.copy(serverJar, serverEntry));
+						}
+					}
+				}
+
+				for (Pending entry : pending) {
+					entry.writeTo(out);
+				}
+			}
+		} catch (ExecutionException e) {
+			Files.deleteIfExists(temp);
+
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new RuntimeException("Failed to merge jars", cause);
+		} catch (InterruptedException e) {
+			Files.deleteIfExists(temp);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted merging jars", e);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Files.move(temp, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static byte[] mergeClass(ZipIndex clientJar, ZipIndex.Entry clientEntry, ZipIndex serverJar, ZipIndex.Entry serverEntry) throws IOException {
+		byte[] data;
+		String side;
+
+		if (clientEntry != null && serverEntry != null) {
+			byte[] clientData = clientJar.read(clientEntry);
+			byte[] serverData = serverJar.read(serverEntry);
+
+			data = Arrays.equals(clientData, serverData) ? clientData : CLASS_MERGER.merge(clientData, serverData);
+			side = null;
+		} else if (clientEntry != null) {
+			data = clientJar.read(clientEntry);
+			side = "CLIENT";
+		} else {
+			data = serverJar.read(serverEntry);
+			side = "SERVER";
+		}
+
+		ClassReader reader = new ClassReader(data);
+		ClassWriter writer = new ClassWriter(0);
+		ClassVisitor visitor = writer;
+		if (side != null) visitor = new ClassMerger.SidedClassVisitor(Opcodes.ASM7, visitor, side);
+		visitor = new SyntheticParameterClassVisitor(Opcodes.ASM7, visitor);
+
+		reader.accept(visitor, 0);
+		return writer.toByteArray();
+	}
+}
@@ -31,25 +31,22 @@ import com.strobel.core.Mapping;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
-import net.fabricmc.mappings.Mappings;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import org.apache.commons.io.IOUtils;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.internal.impldep.aQute.lib.strings.Strings;
-import org.zeroturnaround.zip.ZipUtil;
 import org.zeroturnaround.zip.commons.FileUtils;
-import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
 import java.io.*;
-import java.lang.ref.SoftReference;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -61,13 +58,12 @@ public class ModProcessor {
 		if(output.exists()){
 			output.delete();
 		}
-		remapJar(input, output, null, project);
+		//Always strip the nested jars, which is done as the jar is remapped
+		remapJar(input, output, null, project, Collections.singletonMap("fabric.mod.json", ModProcessor::stripNestedJars));
 		//Enable this if you want your nested jars to be extracted, this will extract **all** jars
 		if(project.getExtensions().getByType(LoomGradleExtension.class).extractJars){
 			handleNestedJars(input, project, config);
 		}
-		//Always strip the nested jars
-		stripNestedJars(output);
 	}
 
 	public static void acknowledgeMod(File input, File output, Project project, Configuration config) {
@@ -119,21 +115,23 @@ public class ModProcessor {
 		project.getDependencies().add(config.getName(), project.files(remappedFile));
 	}
 
-	private static void stripNestedJars(File file){
+	private static byte[] stripNestedJars(byte[] modJson){
 		//Strip out all contained jar info as we dont want loader to try and load the jars contained in dev.
-		ZipUtil.transformEntries(file, new ZipEntryTransformerEntry[]{(new ZipEntryTransformerEntry("fabric.mod.json", new StringZipEntryTransformer() {
-			@Override
-			protected String transform(ZipEntry zipEntry, String input) throws IOException {
-				JsonObject json = GSON.fromJson(input, JsonObject.class);
-				json.remove("jars");
-				return GSON.toJson(json);
-			}
-		}))});
+		JsonObject json = GSON.fromJson(new String(modJson, StandardCharsets.UTF_8), JsonObject.class);
+		json.remove("jars");
+		return GSON.toJson(json).getBytes(StandardCharsets.UTF_8);
 	}
 
-	static SoftReference<Mappings> mappings;
+	public static void remapJar(File input, File output, File mappingsFile, Project project) throws IOException {
+		remapJar(input, output, mappingsFile, project, Collections.emptyMap());
+	}
 
-	public synchronized static void remapJar(File input, File output, File mappingsFile, Project project) throws IOException {
+	/**
+	 * Remap the given mod jar, transforming any of its other files as they are copied over
+	 *
+	 * @param transformers Transformers to apply to the contents of the files they're mapped from
+	 */
+	public synchronized static void remapJar(File input, File output, File mappingsFile, Project project, Map<String, UnaryOperator<byte[]>> transformers) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		String fromM = "intermediary";
 		String toM = "named";
@@ -166,11 +164,11 @@ public class ModProcessor {
 		project.getLogger().lifecycle(":remapping " + input.getName() + " (TinyRemapper, " + fromM + " -> " + toM + ")");
 
 		TinyRemapper remapper = TinyRemapper.newRemapper()
-			.withMappings(TinyRemapperMappingsHelper.create(mappingsProvider.getMappings(), fromM, toM))
+			.withMappings(mappingsProvider.getRemapperMappings(fromM, toM))
 			.build();
 
-		try (OutputConsumerPath outputConsumer = new OutputConsumerPath(Paths.get(output.getAbsolutePath()))) {
-			outputConsumer.addNonClassFiles(inputPath);
+		try (PipelinedJarWriter outputConsumer = new PipelinedJarWriter(Paths.get(output.getAbsolutePath()), PipelinedJarWriter.DEFAULT_QUEUE_SIZE, extension.compression.remappedMods)) {
+			outputConsumer.addNonClassFiles(inputPath, transformers);
 			remapper.readClassPath(modCompiles.toArray(new Path[0]));
 			remapper.readClassPath(mc);
 			remapper.readClassPath(mcDeps);
@@ -0,0 +1,402 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import net.fabricmc.loom.util.zip.RawZipWriter;
+import net.fabricmc.loom.util.zip.ZipIndex;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a jar as its entries are produced, rather than holding them all until the end
+ *
+ * <p>Entries are compressed by whichever thread adds them (such as a remapper's worker threads), then passed through a
+ * bounded queue to a single writer thread, so the producers only wait if they get too far ahead of the disk. Non-class files
+ * from other jars can be copied in on a separate reader thread at the same time, which copies their compressed data straight
+ * across rather than inflating and deflating it again.
+ *
+ * <p>So the jar comes out the same each time it is written from the same inputs, the copied files are sorted by name up
+ * front (with the manifest first, where {@link java.util.jar.JarInputStream} expects it) and written straight into the jar.
+ * Added entries arrive in whatever order the threads adding them happen to run, so they are written to a scratch zip as they
+ * come and copied across after the other files in name order, without being compressed again. Every directory gets an
+ * entry ahead of the first file in it.
+ */
+public class PipelinedJarWriter implements BiConsumer<String, byte[]>, Closeable {
+	/** How many entries can be waiting to be written by default before whatever's adding them has to wait */
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+	/** The manifest first, then everything else by name */
+	private static final Comparator<String> ORDER = Comparator.comparing((String name) -> !MANIFEST.equals(name)).thenComparing(Comparator.naturalOrder());
+	/** Marks the end of the queue for the writer thread */
+	private static final Queued END = new Queued(null, out -> { }, false);
+	/** How long to wait in milliseconds for the writer thread to stop after something has gone wrong */
+	private static final long STOP_TIMEOUT = 10_000;
+
+	private final RawZipWriter zip;
+	/** Where added entries are kept until they can be copied into the jar in order */
+	private final Path unsortedPath;
+	private final RawZipWriter unsorted;
+	private final BlockingQueue<Queued> queue;
+	private final Thread writer;
+	private final List<ZipIndex> sources = Collections.synchronizedList(new ArrayList<>());
+	private Thread reader;
+	private volatile Throwable failure;
+	private boolean closed;
+
+	private interface Entry {
+		void writeTo(RawZipWriter out) throws IOException;
+	}
+
+	private interface Resource {
+		Entry open(UnaryOperator<byte[]> transformer) throws IOException;
+	}
+
+	private static class Queued {
+		final String name;
+		final Entry entry;
+		/** Whether the entry is already in order so can go straight into the jar */
+		final boolean sorted;
+
+		Queued(String name, Entry entry, boolean sorted) {
+			this.name = name;
+			this.entry = entry;
+			this.sorted = sorted;
+		}
+	}
+
+	/**
+	 * @param output The jar to write, replacing it if it already exists
+	 *
+	 * @throws IOException If the jar can't be opened for writing
+	 */
+	public PipelinedJarWriter(Path output) throws IOException {
+		this(output, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * @param output The jar to write, replacing it if it already exists
+	 * @param queueSize The most entries which can be waiting to be written at once
+	 *
+	 * @throws IOException If the jar can't be opened for writing
+	 */
+	public PipelinedJarWriter(Path output, int queueSize) throws IOException {
+		this(output, queueSize, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param output The jar to write, replacing it if it already exists
+	 * @param queueSize The most entries which can be waiting to be written at once
+	 * @param level The {@link Deflater} level to compress new entries with
+	 *
+	 * @throws IOException If the jar can't be opened for writing
+	 */
+	public PipelinedJarWriter(Path output, int queueSize, int level) throws IOException {
+		queue = new ArrayBlockingQueue<>(queueSize);
+		zip = new RawZipWriter(output, level);
+		unsortedPath = output.resolveSibling(output.getFileName() + ".unsorted");
+
+		try {
+			unsorted = new RawZipWriter(unsortedPath, level);
+		} catch (IOException | RuntimeException e) {
+			zip.close();
+			throw e;
+		}
+
+		writer = new Thread(() -> {
+			Set<String> directories = new HashSet<>();
+
+			try (RawZipWriter out = zip) {
+				try (RawZipWriter added = unsorted) {
+					//The first of any duplicates wins, as would happen with the original jar
+					for (Queued queued = queue.take(); queued != END; queued = queue.take()) {
+						if (queued.sorted) {
+							writeParents(out, queued.name, directories);
+							queued.entry.writeTo(out);
+						} else {
+							queued.entry.writeTo(added);
+						}
+					}
+				}
+
+				//Stopped early, the jar won't be used so there's no point finishing it
+				if (failure != null) return;
+
+				try (ZipIndex added = ZipIndex.open(unsortedPath)) {
+					List<ZipIndex.Entry> entries = new ArrayList<>(added.getEntries());
+					entries.sort(Comparator.comparing(ZipIndex.Entry::getName, ORDER));
+
+					for (ZipIndex.Entry entry : entries) {
+						writeParents(out, entry.getName(), directories);
+						out.copy(added, entry);
+					}
+				}
+			} catch (Throwable t) {
+				failure = t;
+				//Anything still trying to add to the queue will notice the failure next time it checks
+				queue.clear();
+			} finally {
+				try {
+					Files.deleteIfExists(unsortedPath);
+				} catch (IOException e) {
+					if (failure == null) failure = e;
+				}
+			}
+		}, "loom-jar-writer-" + output.getFileName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private static void writeParents(RawZipWriter out, String name, Set<String> directories) throws IOException {
+		for (int end = name.indexOf('/'); end >= 0; end = name.indexOf('/', end + 1)) {
+			String directory = name.substring(0, end + 1);
+			if (directories.add(directory)) out.writeDirectory(directory, RawZipWriter.EPOCH);
+		}
+	}
+
+	/**
+	 * Queue a class to be written
+	 *
+	 * @param className The internal name of the class, without <code>.class</code> on the end
+	 * @param data The bytes of the class
+	 */
+	@Override
+	public void accept(String className, byte[] data) {
+		try {
+			add(className + ".class", data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Queue a file to be written
+	 *
+	 * @param name The path of the file in the jar
+	 * @param data The contents of the file
+	 *
+	 * @throws IOException If writing has failed, or the thread was interrupted waiting for space in the queue
+	 */
+	public void add(String name, byte[] data) throws IOException {
+		RawZipWriter.Prepared prepared = zip.prepare(name, data, RawZipWriter.EPOCH);
+		put(name, new Queued(name, out -> out.write(prepared), false));
+	}
+
+	/**
+	 * Copy every file which isn't a class from the given jar, on another thread
+	 *
+	 * @param jar The jar to copy from
+	 */
+	public void addNonClassFiles(Path jar) {
+		addNonClassFiles(jar, Collections.emptyMap());
+	}
+
+	/**
+	 * Copy every file which isn't a class from the given jar, on another thread, changing any with a transformer as they go
+	 *
+	 * @param jar The jar to copy from
+	 * @param transformers Transformers to apply to the contents of the files they're mapped from
+	 */
+	public void addNonClassFiles(Path jar, Map<String, UnaryOperator<byte[]>> transformers) {
+		addNonClassFiles(Collections.singletonList(jar), transformers);
+	}
+
+	/**
+	 * Copy every file which isn't a class from the given jars, on another thread, changing any with a transformer as they go
+	 *
+	 * @param jars The jars to copy from, with files in earlier jars taking priority over any with the same name in later ones
+	 * @param transformers Transformers to apply to the contents of the files they're mapped from
+	 */
+	public synchronized void addNonClassFiles(List<Path> jars, Map<String, UnaryOperator<byte[]>> transformers) {
+		if (reader != null) throw new IllegalStateException("Already copying non-class files");
+
+		reader = new Thread(() -> {
+			List<ZipFile> inflated = new ArrayList<>();
+
+			try {
+				Map<String, Resource> resources = new TreeMap<>(ORDER);
+
+				for (Path jar : jars) {
+					ZipIndex index;
+					try {
+						index = ZipIndex.open(jar);
+					} catch (ZipException e) {
+						//Something the index can't handle (like zip64), so it will have to be done the slow way
+						ZipFile jarFile = new ZipFile(jar.toFile());
+						inflated.add(jarFile);
+
+						for (Enumeration<? extends ZipEntry> it = jarFile.entries(); it.hasMoreElements();) {
+							ZipEntry entry = it.nextElement();
+							if (entry.isDirectory() || entry.getName().endsWith(".class")) continue;
+
+							resources.putIfAbsent(entry.getName(), transformer -> {
+								byte[] data;
+								try (InputStream in = jarFile.getInputStream(entry)) {
+									data = IOUtils.toByteArray(in);
+								}
+
+								if (transformer != null) data = transformer.apply(data);
+								RawZipWriter.Prepared prepared = zip.prepare(entry.getName(), data, RawZipWriter.EPOCH);
+								return out -> out.write(prepared);
+							});
+						}
+
+						continue;
+					}
+					sources.add(index);
+
+					for (ZipIndex.Entry entry : index.getEntries()) {
+						if (entry.isDirectory() || entry.getName().endsWith(".class")) continue;
+
+						resources.putIfAbsent(entry.getName(), transformer -> {
+							if (transformer == null) return out -> out.copy(index, entry);
+
+							RawZipWriter.Prepared prepared = zip.prepare(entry.getName(), transformer.apply(index.read(entry)), entry.getDosTime());
+							return out -> out.write(prepared);
+						});
+					}
+				}
+
+				for (Map.Entry<String, Resource> resource : resources.entrySet()) {
+					String name = resource.getKey();
+					put(name, new Queued(name, resource.getValue().open(transformers.get(name)), true));
+				}
+			} catch (Throwable t) {
+				if (failure == null) failure = t;
+			} finally {
+				for (ZipFile jarFile : inflated) {
+					try {
+						jarFile.close();
+					} catch (IOException ignored) {
+						//Everything needed from it has already been read
+					}
+				}
+			}
+		}, "loom-jar-reader-" + jars.get(0).getFileName());
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void put(String name, Queued entry) throws IOException {
+		try {
+			while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+			}
+
+			checkFailure();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to write " + name);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure;
+
+		if (t != null) {
+			if (t instanceof IOException) throw new IOException("Failed writing jar", t);
+			if (t instanceof RuntimeException) throw (RuntimeException) t;
+			if (t instanceof Error) throw (Error) t;
+			throw new IOException("Failed writing jar", t);
+		}
+	}
+
+	/**
+	 * Wait for everything queued to be written and the jar finished
+	 *
+	 * @throws IOException If anything went wrong writing the jar
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		closed = true;
+
+		try {
+			if (reader != null) reader.join();
+
+			if (failure == null) {
+				put("the end of the jar", END);
+				writer.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for jar to be written");
+		} finally {
+			try {
+				//Only still going if something went wrong before the end could be queued
+				if (writer.isAlive()) stopWriter();
+			} finally {
+				for (ZipIndex source : sources) {
+					source.close();
+				}
+			}
+		}
+
+		checkFailure();
+	}
+
+	private void stopWriter() {
+		//Whatever is still waiting won't be written, and clearing it makes room for the end so the writer can close the jar
+		queue.clear();
+		if (!queue.offer(END)) writer.interrupt();
+
+		boolean interrupted = Thread.interrupted();
+		try {
+			writer.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+
+		if (writer.isAlive()) {
+			//Stuck writing, interrupting it will close the channel underneath it
+			writer.interrupt();
+		}
+
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import net.fabricmc.loom.util.zip.ZipIndex;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A single archive of files from the Loom user cache, to be carried to a machine which can't download them itself
+ *
+ * <p>The first entry is an index of every other entry's path, size and SHA-1 hash, so that the whole archive can be imported
+ * in one pass whilst skipping anything already present.
+ */
+public class PrefetchBundle {
+	private static final String INDEX_NAME = "loom-prefetch-index.json";
+
+	public static class Entry {
+		public final String path;
+		public final long size;
+		public final String sha1;
+
+		Entry(String path, long size, String sha1) {
+			this.path = path;
+			this.size = size;
+			this.sha1 = sha1;
+		}
+	}
+
+	/**
+	 * Write a bundle of the given files
+	 *
+	 * @param bundle The archive to write
+	 * @param files The files to include, mapped from the path (relative to the user cache) they should be imported to
+	 *
+	 * @return The index of what was written
+	 *
+	 * @throws IOException If any of the files can't be read, or the archive can't be written
+	 */
+	public static List<Entry> write(File bundle, Map<String, File> files) throws IOException {
+		List<Entry> index = new ArrayList<>();
+		for (Map.Entry<String, File> file : files.entrySet()) {
+			index.add(new Entry(file.getKey(), file.getValue().length(), hash(file.getValue())));
+		}
+
+		Files.createDirectories(bundle.getAbsoluteFile().getParentFile().toPath());
+		try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(bundle)))) {
+			//Most of what goes in is already compressed, so there's little to gain from trying hard
+			out.setLevel(Deflater.BEST_SPEED);
+
+			out.putNextEntry(new ZipEntry(INDEX_NAME));
+			out.write(new Gson().toJson(index).getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+
+			for (Map.Entry<String, File> file : files.entrySet()) {
+				out.putNextEntry(new ZipEntry(file.getKey()));
+				Files.copy(file.getValue().toPath(), out);
+				out.closeEntry();
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Unpack the given bundle into the given user cache, skipping any file which is already present with the right hash
+	 *
+	 * <p>Only the index and the entries which are missing are read, so importing a bundle which already has been is cheap.
+	 *
+	 * @param bundle The archive to import
+	 * @param userCache The Loom user cache to import into
+	 * @param logger The logger to print information to
+	 *
+	 * @throws IOException If the archive can't be read, is corrupt, or the files can't be written
+	 */
+	public static void importBundle(File bundle, File userCache, Logger logger) throws IOException {
+		Path root = userCache.getAbsoluteFile().toPath().normalize();
+		int imported = 0, skipped = 0;
+
+		ZipIndex zip;
+		try {
+			zip = ZipIndex.open(bundle.toPath());
+		} catch (ZipException e) {
+			//Most likely a bundle big enough to need zip64, which has to be read through from the start instead
+			logger.info("Unable to index {} ({}), reading through it instead", bundle, e.getMessage());
+			streamBundle(bundle, root, logger);
+			return;
+		}
+
+		try {
+			ZipIndex.Entry indexEntry = zip.get(INDEX_NAME);
+			if (indexEntry == null) throw new IOException(bundle + " is not a Loom prefetch bundle, missing " + INDEX_NAME);
+
+			List<Entry> entries = readIndex(zip.openStream(indexEntry));
+			for (Entry entry : entries) {
+				Path target = resolve(root, entry);
+				if (isPresent(target, entry)) {
+					skipped++;
+					continue;
+				}
+
+				ZipIndex.Entry zipEntry = zip.get(entry.path);
+				if (zipEntry == null) throw new IOException(bundle + " is missing " + entry.path + " from its index");
+
+				try (InputStream in = zip.openStream(zipEntry)) {
+					extract(in, target, entry);
+				}
+				imported++;
+			}
+		} finally {
+			try {
+				zip.close();
+			} finally {
+				ChecksumIndex.saveAll();
+			}
+		}
+
+		if (imported > 0) {
+			logger.lifecycle(":imported {} files from {} ({} already present)", imported, bundle, skipped);
+		} else {
+			logger.info(":all {} files from {} already present", skipped, bundle);
+		}
+	}
+
+	private static void streamBundle(File bundle, Path root, Logger logger) throws IOException {
+		int imported = 0, skipped = 0;
+
+		try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(bundle)))) {
+			ZipEntry first = in.getNextEntry();
+			if (first == null || !INDEX_NAME.equals(first.getName())) {
+				throw new IOException(bundle + " is not a Loom prefetch bundle, missing " + INDEX_NAME);
+			}
+
+			Map<String, Entry> index = new HashMap<>();
+			for (Entry entry : readIndex(in)) index.put(entry.path, entry);
+
+			ZipEntry zipEntry;
+			while ((zipEntry = in.getNextEntry()) != null) {
+				Entry entry = index.get(zipEntry.getName());
+				if (entry == null) continue; //Not something we know what to do with
+
+				Path target = resolve(root, entry);
+				if (isPresent(target, entry)) {
+					skipped++;
+					continue;
+				}
+
+				extract(in, target, entry);
+				imported++;
+			}
+		} finally {
+			ChecksumIndex.saveAll();
+		}
+
+		logger.lifecycle(":imported {} files from {} ({} already present)", imported, bundle, skipped);
+	}
+
+	private static List<Entry> readIndex(InputStream in) {
+		//Not closed, as when reading through the bundle the rest of it is still needed
+		return new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), new TypeToken<List<Entry>>() { }.getType());
+	}
+
+	private static Path resolve(Path root, Entry entry) throws IOException {
+		Path target = root.resolve(entry.path).normalize();
+
+		if (!target.startsWith(root)) {
+			throw new IOException("Bundle entry " + entry.path + " would be written outside of " + root);
+		}
+
+		return target;
+	}
+
+	private static boolean isPresent(Path target, Entry entry) {
+		File file = target.toFile();
+		return file.length() == entry.size && Checksum.equals(file, entry.sha1);
+	}
+
+	private static void extract(InputStream in, Path target, Entry entry) throws IOException {
+		Files.createDirectories(target.getParent());
+		Path temp = target.resolveSibling(target.getFileName() + ".import");
+		MessageDigest digest = newSha1();
+		try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+			IOUtils.copyLarge(in, out);
+		}
+
+		String hash = Checksum.toHex(digest.digest());
+		if (!hash.equals(entry.sha1)) {
+			Files.deleteIfExists(temp);
+			throw new IOException("Bundle entry " + entry.path + " has hash " + hash + " rather than " + entry.sha1);
+		}
+
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		Checksum.markVerified(target.toFile(), hash);
+	}
+
+	private static String hash(File file) throws IOException {
+		MessageDigest digest = newSha1();
+
+		try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+			IOUtils.copyLarge(in, NullOutputStream.NULL_OUTPUT_STREAM);
+		}
+
+		return Checksum.toHex(digest.digest());
+	}
+
+	private static MessageDigest newSha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform is meant to support SHA-1", e);
+		}
+	}
+}
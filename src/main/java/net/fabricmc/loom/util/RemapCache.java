@@ -0,0 +1,430 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+import net.fabricmc.tinyremapper.TinyRemapper;
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A cache of remapped classes, keyed by the hash of the original class along with the hash of every mapping which could
+ * change how it is remapped
+ *
+ * <p>The mappings which matter to a class are taken to be those of every class it refers to, along with the whole of each
+ * of those classes' hierarchies (both up and down, as a method can be renamed through a sibling's interface). This is more
+ * than strictly needed, but means a mappings update only has to remap the classes which are actually affected by it.
+ */
+public class RemapCache {
+	/**
+	 * Changed whenever how classes are remapped changes, so old results aren't reused. Tiny Remapper's own version changes
+	 * how classes come out too, so is part of it along with the options it is used with.
+	 */
+	private static final String VERSION = "1:renameInvalidLocals:rebuildSourceFilenames:"
+			+ new File(TinyRemapper.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getName();
+	/** Any class name referred to from a descriptor or signature */
+	private static final Pattern TYPE_REFERENCE = Pattern.compile("L([^;<>.\\[]+)[;<]");
+	/** How long a cached class can go without being used before it is removed */
+	private static final long MAX_UNUSED_AGE = TimeUnit.DAYS.toMillis(30);
+	/** How often unused classes are looked for, which is also how often a used class has its modify time updated */
+	private static final long PRUNE_INTERVAL = TimeUnit.DAYS.toMillis(1);
+	private static final String PRUNE_MARKER = ".last-pruned";
+
+	private final Path root;
+
+	/**
+	 * @param userCache The Loom user cache to keep the classes in
+	 * @param namespace The namespace the classes are remapped to
+	 */
+	public RemapCache(File userCache, String namespace) {
+		root = new File(getRoot(userCache), namespace).toPath();
+	}
+
+	/**
+	 * @param userCache The Loom user cache
+	 *
+	 * @return The directory every namespace's cache is kept in
+	 */
+	public static File getRoot(File userCache) {
+		return new File(userCache, "remapped-classes");
+	}
+
+	/**
+	 * @param key The key of the class
+	 *
+	 * @return The remapped class for the given key, or <code>null</code> if it isn't in the cache
+	 */
+	public byte[] get(String key) {
+		Path file = getFile(key);
+
+		try {
+			if (!Files.exists(file)) return null;
+			byte[] data = Files.readAllBytes(file);
+
+			//Keeps the class from being pruned whilst it's still in use, without a write for every single hit
+			long now = System.currentTimeMillis();
+			if (now - Files.getLastModifiedTime(file).toMillis() > PRUNE_INTERVAL) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+			}
+
+			return data;
+		} catch (IOException e) {
+			//If it can't be read it can just be remapped again
+			return null;
+		}
+	}
+
+	/**
+	 * Store the given remapped class under the given key
+	 *
+	 * @param key The key of the class
+	 * @param data The remapped class
+	 *
+	 * @throws IOException If the class can't be written to the cache
+	 */
+	public void put(String key, byte[] data) throws IOException {
+		Path file = getFile(key);
+		Files.createDirectories(file.getParent());
+
+		Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+		try {
+			Files.write(temp, data);
+
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private Path getFile(String key) {
+		return root.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	/**
+	 * Remove any class from every namespace's cache which hasn't been used for a while, if it's been long enough since this
+	 * was last done
+	 *
+	 * @param userCache The Loom user cache the classes are kept in
+	 *
+	 * @throws IOException If the cache can't be walked
+	 */
+	public static void prune(File userCache) throws IOException {
+		Path root = getRoot(userCache).toPath();
+		if (!Files.isDirectory(root)) return;
+
+		long now = System.currentTimeMillis();
+		Path marker = root.resolve(PRUNE_MARKER);
+		if (Files.exists(marker)) {
+			if (now - Files.getLastModifiedTime(marker).toMillis() < PRUNE_INTERVAL) return;
+			Files.setLastModifiedTime(marker, FileTime.fromMillis(now));
+		} else {
+			Files.createFile(marker);
+		}
+
+		long cutoff = now - MAX_UNUSED_AGE;
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				if (attributes.lastModifiedTime().toMillis() < cutoff && !file.equals(marker)) {
+					Files.deleteIfExists(file);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				//Most likely deleted by another build in the meantime
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				if (!dir.equals(root)) {
+					try {
+						Files.deleteIfExists(dir);
+					} catch (DirectoryNotEmptyException ignored) {
+						//Still has classes in use
+					}
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * The classes of a jar as far as working out their keys goes, which is the same whichever namespace they're remapped to
+	 */
+	public static class JarClasses {
+		final Map<String, ClassInfo> classes = new HashMap<>();
+		/** Every class in the jar which has each class in its hierarchy, including itself */
+		final Map<String, Set<String>> subclasses = new HashMap<>();
+
+		JarClasses() {
+		}
+
+		/**
+		 * @return The name of each class in the jar, mapped to the name of the entry it was read from
+		 */
+		public Map<String, String> getEntries() {
+			Map<String, String> out = new HashMap<>();
+
+			for (ClassInfo info : classes.values()) {
+				out.put(info.name, info.entry);
+			}
+
+			return out;
+		}
+	}
+
+	/**
+	 * Read every class in the given jar, ready to work out their keys with
+	 * {@link #computeKeys(JarClasses, Mappings, String, String)} for as many namespaces as are needed
+	 *
+	 * @param jar The jar of classes to be remapped
+	 *
+	 * @return The classes in the jar
+	 *
+	 * @throws IOException If the jar can't be read
+	 */
+	public static JarClasses scan(Path jar) throws IOException {
+		JarClasses out = new JarClasses();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements();) {
+				ZipEntry entry = it.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+				byte[] data;
+				try (InputStream in = zip.getInputStream(entry)) {
+					data = IOUtils.toByteArray(in);
+				}
+
+				ClassInfo info = new ClassInfo(entry.getName(), data);
+				out.classes.put(info.name, info);
+			}
+		}
+
+		for (String name : out.classes.keySet()) {
+			for (String parent : getSupertypes(name, out.classes, new HashMap<>())) {
+				out.subclasses.computeIfAbsent(parent, k -> new HashSet<>()).add(name);
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Work out the cache key of every class in a jar
+	 *
+	 * @param jar The classes to be remapped, from {@link #scan(Path)}
+	 * @param mappings The mappings to remap with
+	 * @param from The namespace the classes are in
+	 * @param to The namespace the classes are being remapped to
+	 *
+	 * @return The key of every class in the jar, mapped from the class's name
+	 */
+	public static Map<String, String> computeKeys(JarClasses jar, Mappings mappings, String from, String to) {
+		Map<String, ClassInfo> classes = jar.classes;
+		Map<String, Set<String>> subclasses = jar.subclasses;
+		Map<String, String> mappingHashes = hashMappings(mappings, from, to);
+
+		Map<String, Set<String>> supertypes = new HashMap<>();
+		Map<String, String> hierarchyHashes = new HashMap<>();
+		Map<String, String> out = new HashMap<>();
+
+		for (ClassInfo info : classes.values()) {
+			StringBuilder key = new StringBuilder(VERSION).append('\n').append(info.hash).append('\n');
+
+			for (String reference : new TreeSet<>(info.references)) {
+				if (!classes.containsKey(reference)) continue; //Only classes in the jar have mappings
+
+				String hash = hierarchyHashes.computeIfAbsent(reference, name -> {
+					//The mappings of everything which shares a hierarchy with the reference
+					Set<String> related = new TreeSet<>();
+					for (String subclass : subclasses.getOrDefault(name, Collections.singleton(name))) {
+						related.addAll(getSupertypes(subclass, classes, supertypes));
+					}
+
+					StringBuilder hierarchy = new StringBuilder();
+					for (String relation : related) {
+						String mapping = mappingHashes.get(relation);
+						if (mapping != null) hierarchy.append(relation).append('=').append(mapping).append('\n');
+					}
+
+					return sha1(hierarchy.toString());
+				});
+
+				key.append(reference).append('=').append(hash).append('\n');
+			}
+
+			out.put(info.name, sha1(key.toString()));
+		}
+
+		return out;
+	}
+
+	private static Set<String> getSupertypes(String name, Map<String, ClassInfo> classes, Map<String, Set<String>> cache) {
+		Set<String> known = cache.get(name);
+		if (known != null) return known;
+
+		Set<String> out = new HashSet<>();
+		out.add(name);
+
+		ClassInfo info = classes.get(name);
+		if (info != null) {
+			for (String parent : info.parents) {
+				if (classes.containsKey(parent)) out.addAll(getSupertypes(parent, classes, cache));
+			}
+		}
+
+		cache.put(name, out);
+		return out;
+	}
+
+	/**
+	 * @return A hash of every mapping for each class, including its members, mapped from the class's name
+	 */
+	private static Map<String, String> hashMappings(Mappings mappings, String from, String to) {
+		Map<String, List<String>> lines = new HashMap<>();
+
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			lines.computeIfAbsent(entry.get(from), k -> new ArrayList<>()).add("c\t" + entry.get(to));
+		}
+
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			EntryTriple fromTriple = entry.get(from);
+			lines.computeIfAbsent(fromTriple.getOwner(), k -> new ArrayList<>()).add("f\t" + fromTriple.getName() + '\t' + fromTriple.getDesc() + '\t' + entry.get(to).getName());
+		}
+
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			EntryTriple fromTriple = entry.get(from);
+			lines.computeIfAbsent(fromTriple.getOwner(), k -> new ArrayList<>()).add("m\t" + fromTriple.getName() + '\t' + fromTriple.getDesc() + '\t' + entry.get(to).getName());
+		}
+
+		Map<String, String> out = new HashMap<>();
+		for (Map.Entry<String, List<String>> entry : lines.entrySet()) {
+			List<String> owned = entry.getValue();
+			Collections.sort(owned);
+			out.put(entry.getKey(), sha1(String.join("\n", owned)));
+		}
+
+		return out;
+	}
+
+	private static String sha1(String text) {
+		return sha1(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String sha1(byte[] data) {
+		try {
+			return Checksum.toHex(MessageDigest.getInstance("SHA-1").digest(data));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform is meant to support SHA-1", e);
+		}
+	}
+
+	private static class ClassInfo {
+		final String entry, name, hash;
+		final List<String> parents = new ArrayList<>();
+		final Set<String> references = new HashSet<>();
+
+		ClassInfo(String entry, byte[] data) {
+			this.entry = entry;
+			hash = sha1(data);
+
+			ClassReader reader = new ClassReader(data);
+			name = reader.getClassName();
+			if (reader.getSuperName() != null) parents.add(reader.getSuperName());
+			Collections.addAll(parents, reader.getInterfaces());
+
+			//Every class named in the constant pool, whether directly or from within a descriptor or signature
+			char[] buffer = new char[reader.getMaxStringLength()];
+			for (int i = 1; i < reader.getItemCount(); i++) {
+				int offset = reader.getItem(i);
+				if (offset == 0) continue; //The unused second slot of a long or double
+
+				switch (data[offset - 1]) {
+				case 1: { //Utf8
+					Matcher matcher = TYPE_REFERENCE.matcher(readUtf8(data, offset));
+					while (matcher.find()) references.add(matcher.group(1));
+					break;
+				}
+
+				case 7: //Class
+					String type = reader.readUTF8(offset, buffer);
+					//Array classes are named by their descriptor, which the Utf8 entry will be picked up from
+					if (type.charAt(0) != '[') references.add(type);
+					break;
+				}
+			}
+		}
+
+		private static String readUtf8(byte[] data, int offset) {
+			int length = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+			//Names are only ever found in the ASCII parts, so anything else doesn't need decoding properly
+			return new String(data, offset + 2, length, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
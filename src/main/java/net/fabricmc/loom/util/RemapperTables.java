@@ -0,0 +1,194 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.MemberInstance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * The class, field and method maps TinyRemapper is given for a pair of namespaces, built once and kept on disk
+ *
+ * <p>The member keys are made by TinyRemapper itself, so an example of each is stored alongside them. If an update to
+ * TinyRemapper changes how they're made the tables are built again rather than being loaded wrong.
+ */
+public class RemapperTables implements IMappingProvider {
+	private static final int MAGIC = 0x4C524D54; //LRMT
+	private static final int VERSION = 1;
+
+	private final Map<String, String> classes, fields, methods;
+
+	private RemapperTables(Map<String, String> classes, Map<String, String> fields, Map<String, String> methods) {
+		this.classes = classes;
+		this.fields = fields;
+		this.methods = methods;
+	}
+
+	/**
+	 * Build the tables for the given namespaces
+	 *
+	 * @param mappings The mappings to build from
+	 * @param from The namespace being remapped from
+	 * @param to The namespace being remapped to
+	 *
+	 * @return The tables to remap between the namespaces
+	 */
+	public static RemapperTables build(Mappings mappings, String from, String to) {
+		Map<String, String> classes = new HashMap<>(), fields = new HashMap<>(), methods = new HashMap<>();
+		TinyRemapperMappingsHelper.create(mappings, from, to).load(classes, fields, methods);
+		return new RemapperTables(classes, fields, methods);
+	}
+
+	/**
+	 * Load the tables for the given namespaces from the cache, building and saving them if they're missing or out of date
+	 *
+	 * @param tiny The Tiny file the mappings come from
+	 * @param mappings Loads the mappings from the Tiny file, only used if the tables need building
+	 * @param from The namespace being remapped from
+	 * @param to The namespace being remapped to
+	 * @param cache Where the tables for this pair of namespaces are kept
+	 *
+	 * @return The tables to remap between the namespaces
+	 *
+	 * @throws IOException If the mappings can't be loaded
+	 */
+	public static RemapperTables load(File tiny, Callable<Mappings> mappings, String from, String to, File cache) throws IOException {
+		if (cache.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.toPath())))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == tiny.length() && in.readLong() == tiny.lastModified()
+						&& from.equals(in.readUTF()) && to.equals(in.readUTF())
+						&& getFieldIdExample().equals(in.readUTF()) && getMethodIdExample().equals(in.readUTF())) {
+					return new RemapperTables(readTable(in), readTable(in), readTable(in));
+				}
+			} catch (IOException e) {
+				//Built again below
+			}
+		}
+
+		RemapperTables tables;
+		try {
+			tables = build(mappings.call(), from, to);
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Failed to load mappings from " + tiny, e);
+		}
+
+		try {
+			tables.write(tiny, from, to, cache);
+		} catch (IOException e) {
+			//Only means they'll be built again next time
+		}
+
+		return tables;
+	}
+
+	private static String getFieldIdExample() {
+		return MemberInstance.getFieldId("name", "I");
+	}
+
+	private static String getMethodIdExample() {
+		return MemberInstance.getMethodId("name", "(I)V");
+	}
+
+	private void write(File tiny, String from, String to, File cache) throws IOException {
+		Path temp = Files.createTempFile(cache.getAbsoluteFile().getParentFile().toPath(), cache.getName(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(tiny.length());
+				out.writeLong(tiny.lastModified());
+				out.writeUTF(from);
+				out.writeUTF(to);
+				out.writeUTF(getFieldIdExample());
+				out.writeUTF(getMethodIdExample());
+
+				writeTable(out, classes);
+				writeTable(out, fields);
+				writeTable(out, methods);
+			}
+
+			try {
+				Files.move(temp, cache.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeTable(DataOutputStream out, Map<String, String> table) throws IOException {
+		out.writeInt(table.size());
+
+		for (Map.Entry<String, String> entry : table.entrySet()) {
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		out.writeBoolean(string != null);
+		if (string != null) out.writeUTF(string);
+	}
+
+	private static Map<String, String> readTable(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, String> table = new HashMap<>(size * 4 / 3 + 1);
+
+		for (int i = 0; i < size; i++) {
+			table.put(readString(in), readString(in));
+		}
+
+		return table;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	@Override
+	public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+		classMap.putAll(classes);
+		fieldMap.putAll(fields);
+		methodMap.putAll(methods);
+	}
+}
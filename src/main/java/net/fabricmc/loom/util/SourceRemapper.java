@@ -61,19 +61,22 @@ public class SourceRemapper {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
 
-		MappingSet mappings = extension.getOrCreateSrcMappingCache(toNamed ? 1 : 0, () -> {
-			try {
-				Mappings m = mappingsProvider.getMappings();
-				project.getLogger().lifecycle(":loading " + (toNamed ? "intermediary -> named" : "named -> intermediary") + " source mappings");
-				return new TinyReader(m, toNamed ? "intermediary" : "named", toNamed ? "named" : "intermediary").read();
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
+		MappingsRegistry registry = MappingsRegistry.get(project);
+		File tiny = mappingsProvider.MAPPINGS_TINY;
+		String direction = toNamed ? "intermediary -> named" : "named -> intermediary";
+
+		//Lorenz's mapping tree takes up a good deal more room than the text it was read from
+		MappingSet mappings = registry.get("source:" + tiny.getAbsolutePath() + '@' + tiny.lastModified() + ':' + direction, tiny.length() * 4, () -> {
+			Mappings m = mappingsProvider.getMappings();
+			project.getLogger().lifecycle(":loading " + direction + " source mappings");
+			return new TinyReader(m, toNamed ? "intermediary" : "named", toNamed ? "named" : "intermediary").read();
 		});
 
 		project.getLogger().lifecycle(":remapping source jar");
 
-		Mercury mercury = extension.getOrCreateSrcMercuryCache(toNamed ? 1 : 0, () -> {
+		//The classpath is different for each project, so each needs its own
+		//Each keeps the mapping tree alive through its remapper, so dropping the tree above frees nothing whilst any of these are held
+		Mercury mercury = registry.get("mercury:" + project.getPath() + ':' + tiny.getAbsolutePath() + '@' + tiny.lastModified() + ':' + direction, tiny.length() * 4, () -> {
 			Mercury m = new Mercury();
 
 			for (File file : project.getConfigurations().getByName(Constants.MINECRAFT_DEPENDENCIES).getFiles()) {
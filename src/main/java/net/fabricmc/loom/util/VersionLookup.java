@@ -0,0 +1,130 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The part of the version manifest Loom actually needs, small enough to read on every configuration without slowing it down
+ */
+public class VersionLookup {
+	/** Version JSONs are served from a path containing their hash, which is used if the manifest doesn't say it directly */
+	private static final Pattern URL_HASH = Pattern.compile("/([0-9a-f]{40})/");
+
+	/** When the manifest this came from was last checked for changes, in milliseconds since the epoch */
+	private long checked;
+	private Map<String, Version> versions = new HashMap<>();
+
+	public static class Version {
+		public final String url, sha1;
+
+		Version(String url, String sha1) {
+			this.url = url;
+			this.sha1 = sha1;
+		}
+	}
+
+	/**
+	 * Pull out what is needed from the given manifest
+	 *
+	 * @param manifest The version manifest
+	 * @param checked When the manifest was last checked for changes, in milliseconds since the epoch
+	 *
+	 * @return A lookup for every version in the given manifest
+	 */
+	public static VersionLookup fromManifest(ManifestVersion manifest, long checked) {
+		VersionLookup lookup = new VersionLookup();
+		lookup.checked = checked;
+
+		for (ManifestVersion.Versions version : manifest.versions) {
+			String sha1 = version.sha1;
+
+			if (sha1 == null) {
+				Matcher matcher = URL_HASH.matcher(version.url);
+				if (matcher.find()) sha1 = matcher.group(1);
+			}
+
+			//The first of any duplicates wins, as it did when the manifest was searched directly
+			lookup.versions.putIfAbsent(version.id.toLowerCase(Locale.ROOT), new Version(version.url, sha1));
+		}
+
+		return lookup;
+	}
+
+	/**
+	 * @param file The file to read a lookup from
+	 *
+	 * @return The lookup read from the given file, or <code>null</code> if there isn't a valid one
+	 */
+	public static VersionLookup read(File file) {
+		if (!file.exists()) return null;
+
+		try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			VersionLookup lookup = new Gson().fromJson(reader, VersionLookup.class);
+			return lookup != null && lookup.versions != null ? lookup : null;
+		} catch (IOException | JsonParseException e) {
+			//It'll just be made again from the manifest
+			return null;
+		}
+	}
+
+	public void write(File file) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			new Gson().toJson(this, writer);
+		}
+	}
+
+	/**
+	 * @param ttl How long the manifest is trusted for after being checked, in milliseconds
+	 *
+	 * @return Whether the manifest should be checked for changes again
+	 */
+	public boolean isStale(long ttl) {
+		long age = System.currentTimeMillis() - checked;
+		return age < 0 || age > ttl;
+	}
+
+	/**
+	 * @param id The Minecraft version wanted
+	 *
+	 * @return Where to find the given version's JSON, or <code>null</code> if the manifest doesn't have it
+	 */
+	public Version get(String id) {
+		return versions.get(id.toLowerCase(Locale.ROOT));
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of workers for running many independent downloads at once.
+ *
+ * <p>Failures don't stop the other tasks, they are collected and thrown together from {@link #await()}.
+ */
+public class DownloadExecutor implements AutoCloseable {
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final ExecutorService executor;
+	private final List<Future<?>> tasks = new ArrayList<>();
+	private final List<DownloadFailure> failures = Collections.synchronizedList(new ArrayList<>());
+
+	public DownloadExecutor(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one download thread, got " + threads);
+
+		int pool = POOL_COUNT.incrementAndGet();
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory factory = task -> {
+			Thread thread = new Thread(task, "loom-download-" + pool + '-' + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		executor = Executors.newFixedThreadPool(threads, factory);
+	}
+
+	/**
+	 * Queue the given task to be run on one of the workers
+	 *
+	 * @param name A description of what the task is fetching, used when reporting failures
+	 * @param task The task to run
+	 *
+	 * @return The queued task, which gives whether it succeeded once finished
+	 */
+	public Future<Boolean> submit(String name, DownloadTask task) {
+		Future<Boolean> future = executor.submit(() -> {
+			try {
+				task.run();
+				return true;
+			} catch (IOException | RuntimeException e) {
+				failures.add(new DownloadFailure(name, e));
+				return false;
+			}
+		});
+
+		tasks.add(future);
+		return future;
+	}
+
+	/**
+	 * Wait for only the given task to finish, leaving the others running
+	 *
+	 * @param task A task returned from {@link #submit(String, DownloadTask)}
+	 *
+	 * @return Whether the task succeeded, if not its failure is thrown from {@link #await()}
+	 */
+	public boolean await(Future<Boolean> task) {
+		boolean interrupted = false;
+
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					//Tasks catch what they throw, so this would be an Error
+					throw new RuntimeException("Download task failed unexpectedly", e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait for every submitted task to finish
+	 *
+	 * @throws DownloadException If any of the tasks failed, with each failure attached as a suppressed exception
+	 */
+	public void await() throws DownloadException {
+		boolean interrupted = false;
+
+		for (Future<?> task : tasks) {
+			while (true) {
+				try {
+					task.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					//Tasks catch what they throw, so this would be an Error
+					throw new RuntimeException("Download task failed unexpectedly", e.getCause());
+				}
+			}
+		}
+
+		tasks.clear();
+		if (interrupted) Thread.currentThread().interrupt();
+
+		if (!failures.isEmpty()) {
+			List<DownloadFailure> failed;
+			synchronized (failures) {
+				failed = new ArrayList<>(failures);
+				failures.clear();
+			}
+
+			throw new DownloadException(failed);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	@FunctionalInterface
+	public interface DownloadTask {
+		void run() throws IOException;
+	}
+
+	public static class DownloadFailure {
+		public final String name;
+		public final Exception cause;
+
+		DownloadFailure(String name, Exception cause) {
+			this.name = name;
+			this.cause = cause;
+		}
+	}
+
+	public static class DownloadException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final List<DownloadFailure> failures;
+
+		DownloadException(List<DownloadFailure> failures) {
+			super(describe(failures));
+			this.failures = Collections.unmodifiableList(failures);
+
+			for (DownloadFailure failure : failures) {
+				addSuppressed(failure.cause);
+			}
+		}
+
+		public List<DownloadFailure> getFailures() {
+			return failures;
+		}
+
+		private static String describe(List<DownloadFailure> failures) {
+			StringBuilder builder = new StringBuilder();
+			builder.append(failures.size()).append(failures.size() == 1 ? " download" : " downloads").append(" failed:");
+
+			int shown = Math.min(failures.size(), 10);
+			for (int i = 0; i < shown; i++) {
+				DownloadFailure failure = failures.get(i);
+				builder.append("\n\t- ").append(failure.name).append(": ").append(failure.cause.getMessage());
+			}
+
+			if (shown < failures.size()) {
+				builder.append("\n\t... and ").append(failures.size() - shown).append(" more");
+			}
+
+			return builder.toString();
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single store of what is known about every file downloaded into a directory, rather than a sidecar file next to each one
+ *
+ * <p>The store is an append-only log of JSON lines, read once when first used and compacted when it has grown well beyond
+ * the number of files it describes. Appends and compaction are done whilst holding a lock on a separate file, so several
+ * builds can share the same store safely.
+ */
+public class DownloadMetadata {
+	private static final String STORE_NAME = "download-metadata.log";
+	private static final String LOCK_NAME = STORE_NAME + ".lock";
+	/** How many more lines than live entries the log can have before it is rewritten */
+	private static final int COMPACT_SLACK = 256;
+	private static final Map<Path, DownloadMetadata> STORES = new ConcurrentHashMap<>();
+
+	private final Gson gson = new Gson();
+	private final Path root;
+	private final Path storeFile;
+	private final Path lockFile;
+	private Map<String, Entry> entries;
+	private int lines;
+
+	private DownloadMetadata(Path root) {
+		this.root = root;
+		this.storeFile = root.resolve(STORE_NAME);
+		this.lockFile = root.resolve(LOCK_NAME);
+	}
+
+	/**
+	 * Get the store for the given directory, it will be loaded the first time it is used
+	 *
+	 * @param root The directory the store covers
+	 *
+	 * @return The store for the given directory
+	 */
+	public static DownloadMetadata forRoot(File root) {
+		return STORES.computeIfAbsent(normalise(root), DownloadMetadata::new);
+	}
+
+	/**
+	 * Get the store covering the given file, which is the store for its directory if it isn't within a known root
+	 *
+	 * @param file The file to find the store for
+	 *
+	 * @return The store which holds the metadata for the given file
+	 */
+	public static DownloadMetadata forFile(File file) {
+		Path path = normalise(file);
+
+		for (DownloadMetadata store : STORES.values()) {
+			if (path.startsWith(store.root)) {
+				return store;
+			}
+		}
+
+		return forRoot(file.getAbsoluteFile().getParentFile());
+	}
+
+	private static Path normalise(File file) {
+		return file.getAbsoluteFile().toPath().normalize();
+	}
+
+	/**
+	 * @param file The file to get the metadata of
+	 *
+	 * @return The metadata of the given file, or <code>null</code> if nothing is known about it
+	 */
+	public synchronized Entry get(File file) {
+		return getEntries().get(keyFor(file));
+	}
+
+	/**
+	 * Record the given metadata for the given file, replacing anything already known about it
+	 *
+	 * @param file The file the metadata is for
+	 * @param entry The metadata of the given file
+	 *
+	 * @throws IOException If the store can't be written to
+	 */
+	public synchronized void put(File file, Entry entry) throws IOException {
+		String key = keyFor(file);
+		if (entry.equals(getEntries().put(key, entry))) return;
+
+		append(new Line(key, entry));
+	}
+
+	/**
+	 * Forget everything known about the given file
+	 *
+	 * @param file The file to forget the metadata of
+	 *
+	 * @throws IOException If the store can't be written to
+	 */
+	public synchronized void remove(File file) throws IOException {
+		String key = keyFor(file);
+		if (getEntries().remove(key) == null) return;
+
+		append(new Line(key, null));
+	}
+
+	private String keyFor(File file) {
+		return root.relativize(normalise(file)).toString().replace(File.separatorChar, '/');
+	}
+
+	private Map<String, Entry> getEntries() {
+		if (entries == null) {
+			entries = new HashMap<>();
+
+			try {
+				read(entries);
+			} catch (IOException e) {
+				//Everything will just be downloaded again as if it were new
+				e.printStackTrace();
+			}
+
+			if (lines > entries.size() + COMPACT_SLACK) {
+				try {
+					compact();
+				} catch (IOException e) {
+					//The log will just carry on growing until next time
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	private void read(Map<String, Entry> into) throws IOException {
+		lines = 0;
+		if (!Files.exists(storeFile)) return;
+
+		try (BufferedReader reader = Files.newBufferedReader(storeFile, StandardCharsets.UTF_8)) {
+			String raw;
+			while ((raw = reader.readLine()) != null) {
+				if (raw.isEmpty()) continue;
+
+				Line line;
+				try {
+					line = gson.fromJson(raw, Line.class);
+				} catch (JsonParseException e) {
+					//Most likely a write which was cut off part way through, the lines after it are still fine
+					continue;
+				}
+				if (line == null || line.path == null) continue;
+				lines++;
+
+				if (line.entry != null) {
+					into.put(line.path, line.entry);
+				} else {
+					into.remove(line.path);
+				}
+			}
+		}
+	}
+
+	private void append(Line line) throws IOException {
+		String json = gson.toJson(line) + '\n';
+
+		try (FileChannel lock = openLock(); FileLock held = lock.lock()) {
+			Files.write(storeFile, json.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			lines++;
+		}
+	}
+
+	private void compact() throws IOException {
+		try (FileChannel lock = openLock(); FileLock held = lock.lock()) {
+			//Another build might have added to the log since it was read, so read it again now nothing else can
+			Map<String, Entry> latest = new HashMap<>();
+			read(latest);
+
+			Path temp = storeFile.resolveSibling(STORE_NAME + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Entry> entry : latest.entrySet()) {
+					writer.write(gson.toJson(new Line(entry.getKey(), entry.getValue())));
+					writer.write('\n');
+				}
+			}
+
+			try {
+				Files.move(temp, storeFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, storeFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			entries = latest;
+			lines = latest.size();
+		}
+	}
+
+	private FileChannel openLock() throws IOException {
+		Files.createDirectories(root);
+		return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	/** A single line of the log, an entry of <code>null</code> means the file's metadata was removed */
+	private static class Line {
+		String path;
+		Entry entry;
+
+		Line(String path, Entry entry) {
+			this.path = path;
+			this.entry = entry;
+		}
+	}
+
+	public static class Entry {
+		private final String url;
+		private final String eTag;
+		private final long lastModified;
+		private final long size;
+		private final String sha1;
+
+		/**
+		 * @param url Where the file was downloaded from
+		 * @param eTag The ETag the server gave for the file, or <code>null</code> if it didn't give one
+		 * @param lastModified The modify time the server gave for the file, or <code>-1</code> if it didn't give one
+		 * @param size The size of the file once downloaded
+		 * @param sha1 The SHA-1 hash of the file, or <code>null</code> if it wasn't worked out
+		 */
+		public Entry(String url, String eTag, long lastModified, long size, String sha1) {
+			this.url = url;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.sha1 = sha1;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getSha1() {
+			return sha1;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Entry)) return false;
+
+			Entry that = (Entry) obj;
+			return lastModified == that.lastModified && size == that.size && Objects.equals(url, that.url) && Objects.equals(eTag, that.eTag) && Objects.equals(sha1, that.sha1);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(url, eTag, lastModified, size, sha1);
+		}
+	}
+}
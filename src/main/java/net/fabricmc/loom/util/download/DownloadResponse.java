@@ -0,0 +1,69 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response from a {@link DownloadTransport}, closing it will release the connection back to the transport
+ */
+public interface DownloadResponse extends Closeable {
+	/**
+	 * @return The HTTP status code of the response
+	 */
+	int getCode() throws IOException;
+
+	/**
+	 * @return The HTTP status message of the response, if there was one
+	 */
+	String getMessage() throws IOException;
+
+	/**
+	 * @param name The (case insensitive) name of the header
+	 *
+	 * @return The value of the given header, or <code>null</code> if it wasn't sent
+	 */
+	String getHeader(String name);
+
+	/**
+	 * @param name The (case insensitive) name of the header
+	 * @param fallback The value to return if the header is missing or malformed
+	 *
+	 * @return The value of the given header as milliseconds since the epoch
+	 */
+	long getDateHeader(String name, long fallback);
+
+	/**
+	 * @return The length of the body as sent over the wire, or <code>-1</code> if it isn't known
+	 */
+	long getContentLength();
+
+	/**
+	 * @return The body of the response with any content encoding already removed
+	 */
+	InputStream getBody() throws IOException;
+}
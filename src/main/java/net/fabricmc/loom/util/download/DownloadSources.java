@@ -0,0 +1,179 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where files can be downloaded from besides the URL they are normally found at
+ *
+ * <p>Mirrors replace the start of an upstream URL with each of their base URLs in turn, falling back to the upstream itself
+ * if none of them work. A shared cache holds files named by their SHA-1 hash (as <code>ab/abcdef...</code>), either in a
+ * directory or at a URL, and is tried before anything else for files whose hash is known.
+ */
+public class DownloadSources {
+	/** Download everything straight from where it normally comes from */
+	public static final DownloadSources DIRECT = new DownloadSources(Collections.emptyMap(), null, false);
+
+	private final Map<String, List<String>> mirrors = new LinkedHashMap<>();
+	private final File sharedDir;
+	private final String sharedUrl;
+	private final boolean populateShared;
+
+	/**
+	 * @param mirrors The upstream base URLs mapped to the mirror base URLs to try for them, in the order they should be tried
+	 * @param sharedCache The directory or URL of a shared content-addressed cache, or <code>null</code> if there isn't one
+	 * @param populateShared Whether to copy new downloads into the shared cache, only possible if it is a directory
+	 */
+	public DownloadSources(Map<String, List<String>> mirrors, String sharedCache, boolean populateShared) {
+		for (Map.Entry<String, List<String>> entry : mirrors.entrySet()) {
+			List<String> bases = new ArrayList<>();
+			for (String base : entry.getValue()) bases.add(withSlash(base));
+			this.mirrors.put(withSlash(entry.getKey()), bases);
+		}
+
+		if (sharedCache == null || sharedCache.isEmpty()) {
+			sharedDir = null;
+			sharedUrl = null;
+		} else if (sharedCache.startsWith("file:")) {
+			sharedDir = new File(URI.create(sharedCache));
+			sharedUrl = null;
+		} else if (sharedCache.contains("://")) {
+			sharedDir = null;
+			sharedUrl = withSlash(sharedCache);
+		} else {
+			sharedDir = new File(sharedCache).getAbsoluteFile();
+			sharedUrl = null;
+		}
+
+		this.populateShared = populateShared && sharedDir != null;
+	}
+
+	private static String withSlash(String base) {
+		return base.endsWith("/") ? base : base + '/';
+	}
+
+	/**
+	 * Get every URL the given file could be downloaded from, in the order they should be tried
+	 *
+	 * @param from The URL the file is normally downloaded from, which is always the last one given
+	 * @param sha1 The expected SHA-1 hash of the file, or <code>null</code> if it isn't known
+	 *
+	 * @return The URLs to try downloading the file from
+	 *
+	 * @throws MalformedURLException If a mirror produces an invalid URL
+	 */
+	public List<URL> getCandidates(URL from, String sha1) throws MalformedURLException {
+		List<URL> out = new ArrayList<>();
+		if (sha1 != null && sharedUrl != null) out.add(new URL(sharedUrl + toSharedPath(sha1)));
+
+		String url = from.toString();
+		for (Map.Entry<String, List<String>> entry : mirrors.entrySet()) {
+			if (url.startsWith(entry.getKey())) {
+				String path = url.substring(entry.getKey().length());
+
+				for (String base : entry.getValue()) {
+					out.add(new URL(base + path));
+				}
+
+				break;
+			}
+		}
+
+		out.add(from);
+		return out;
+	}
+
+	/**
+	 * @param upstream The upstream base URL
+	 *
+	 * @return The mirror base URLs to try for the given upstream, which might be empty
+	 */
+	public List<String> getMirrors(String upstream) {
+		return mirrors.getOrDefault(withSlash(upstream), Collections.emptyList());
+	}
+
+	/**
+	 * @param sha1 The SHA-1 hash of the file wanted
+	 *
+	 * @return The file in the shared cache directory with the given hash, or <code>null</code> if it isn't there
+	 */
+	public File getShared(String sha1) {
+		if (sharedDir == null) return null;
+
+		File file = new File(sharedDir, toSharedPath(sha1));
+		return file.isFile() ? file : null;
+	}
+
+	/**
+	 * Copy the given file into the shared cache directory, if it is being populated and doesn't already have it
+	 *
+	 * @param file The file to share, which must already be known to have the given hash
+	 * @param sha1 The SHA-1 hash of the file
+	 *
+	 * @throws IOException If the file can't be copied
+	 */
+	public void share(File file, String sha1) throws IOException {
+		if (!populateShared) return;
+
+		Path target = new File(sharedDir, toSharedPath(sha1)).toPath();
+		if (Files.exists(target)) return;
+		Files.createDirectories(target.getParent());
+
+		//Other agents might be reading the cache, so the file mustn't appear until it is complete
+		Path temp = Files.createTempFile(target.getParent(), sha1, ".tmp");
+		try {
+			Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target);
+			}
+		} catch (IOException e) {
+			//Another agent may have shared the file in the meantime, which is just as good
+			if (!Files.exists(target)) throw e;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static String toSharedPath(String sha1) {
+		return sha1.substring(0, 2) + '/' + sha1;
+	}
+}
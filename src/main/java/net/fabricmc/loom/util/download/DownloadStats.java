@@ -0,0 +1,156 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running totals of how requests to each host have gone, both to report and to decide when requests should be hedged
+ */
+public class DownloadStats {
+	/** How many of the most recent response times are kept per host */
+	private static final int SAMPLE_SIZE = 256;
+	private static final Map<String, DownloadStats> HOSTS = new ConcurrentHashMap<>();
+
+	private final String host;
+	private final long[] latencies = new long[SAMPLE_SIZE];
+	private int samples;
+	private long requests, failures, retries, hedges, hedgeWins, bytes;
+
+	private DownloadStats(String host) {
+		this.host = host;
+	}
+
+	/**
+	 * @param host The host name to get the statistics for
+	 *
+	 * @return The statistics for the given host, which will be empty if nothing has been requested from it yet
+	 */
+	public static DownloadStats forHost(String host) {
+		return HOSTS.computeIfAbsent(host, DownloadStats::new);
+	}
+
+	/**
+	 * @return The statistics for every host which has been requested from, sorted by host name
+	 */
+	public static Map<String, DownloadStats> getHosts() {
+		return Collections.unmodifiableMap(new TreeMap<>(HOSTS));
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * Record a successful response
+	 *
+	 * @param latency How long the response took to arrive in milliseconds
+	 */
+	public synchronized void recordResponse(long latency) {
+		requests++;
+		latencies[samples++ % SAMPLE_SIZE] = latency;
+	}
+
+	public synchronized void recordFailure() {
+		requests++;
+		failures++;
+	}
+
+	public synchronized void recordRetry() {
+		retries++;
+	}
+
+	public synchronized void recordHedge() {
+		hedges++;
+	}
+
+	public synchronized void recordHedgeWin() {
+		hedgeWins++;
+	}
+
+	public synchronized void recordBytes(long count) {
+		bytes += count;
+	}
+
+	/**
+	 * Get the given percentile of the recent response times
+	 *
+	 * @param percentile The percentile wanted, between <code>0</code> and <code>1</code>
+	 * @param minSamples The fewest response times needed to give an answer
+	 *
+	 * @return The response time in milliseconds at the given percentile, or <code>-1</code> if there aren't enough samples yet
+	 */
+	public long getLatencyPercentile(double percentile, int minSamples) {
+		long[] sorted;
+		synchronized (this) {
+			int count = Math.min(samples, SAMPLE_SIZE);
+			if (count < minSamples || count == 0) return -1;
+			sorted = Arrays.copyOf(latencies, count);
+		}
+
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+	}
+
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	public synchronized long getRetries() {
+		return retries;
+	}
+
+	public synchronized long getHedges() {
+		return hedges;
+	}
+
+	public synchronized long getHedgeWins() {
+		return hedgeWins;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		long p50 = getLatencyPercentile(0.5, 1);
+		long p95 = getLatencyPercentile(0.95, 1);
+		long p99 = getLatencyPercentile(0.99, 1);
+
+		synchronized (this) {
+			return host + ": " + requests + " requests (" + failures + " failed, " + retries + " retried, " + hedges + " hedged, " + hedgeWins
+					+ " won by hedging), " + bytes + " bytes, latency p50 " + p50 + "ms p95 " + p95 + "ms p99 " + p99 + "ms";
+		}
+	}
+}
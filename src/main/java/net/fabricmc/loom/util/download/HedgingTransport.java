@@ -0,0 +1,172 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link DownloadTransport} which sends a second copy of a request if the first is taking longer than most to be answered
+ *
+ * <p>Whichever response arrives first is used and the other is closed. How long is too long is worked out per host from the
+ * {@link DownloadStats} of recent requests, which this also keeps up to date.
+ */
+public class HedgingTransport implements DownloadTransport {
+	/** How many responses from a host are needed before its response times are trusted enough to hedge on */
+	private static final int MIN_SAMPLES = 20;
+	/** The shortest time to wait before hedging, so fast hosts aren't sent double the requests for the sake of a few milliseconds */
+	private static final long MIN_HEDGE_DELAY = 50;
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final DownloadTransport delegate;
+	private final double percentile;
+	private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "loom-download-hedge-" + THREAD_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param delegate The transport which actually makes the requests
+	 * @param percentile The percentile of response times past which a request is hedged, between <code>0</code> and
+	 * <code>1</code> exclusive, anything else turns hedging off (leaving only the statistics)
+	 */
+	public HedgingTransport(DownloadTransport delegate, double percentile) {
+		this.delegate = delegate;
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Stop the threads used to send hedged requests once they're idle, after which no more requests can be hedged
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public DownloadResponse get(URL url, Map<String, String> headers) throws IOException {
+		DownloadStats stats = DownloadStats.forHost(url.getHost());
+		long hedgeAfter = percentile > 0 && percentile < 1 ? stats.getLatencyPercentile(percentile, MIN_SAMPLES) : -1;
+
+		if (hedgeAfter < 0) {
+			//No hedging, so there's no need for another thread
+			return request(url, headers, stats);
+		}
+
+		CompletableFuture<DownloadResponse> result = new CompletableFuture<>();
+		AtomicInteger running = new AtomicInteger(1);
+		List<IOException> failures = new ArrayList<>();
+		executor.execute(() -> attempt(url, headers, stats, result, running, failures, false));
+
+		try {
+			try {
+				return result.get(Math.max(hedgeAfter, MIN_HEDGE_DELAY), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				//Taking longer than most requests do, try again alongside it and see which wins
+				running.incrementAndGet();
+				stats.recordHedge();
+				executor.execute(() -> attempt(url, headers, stats, result, running, failures, true));
+			}
+
+			return result.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			//Whichever requests are still going will close their responses when they see nobody wants them
+			result.cancel(false);
+			throw new InterruptedIOException("Interrupted waiting for " + url);
+		}
+	}
+
+	private DownloadResponse request(URL url, Map<String, String> headers, DownloadStats stats) throws IOException {
+		long start = System.nanoTime();
+
+		DownloadResponse response = null;
+		try {
+			response = delegate.get(url, headers);
+			//Make sure the response has actually started to arrive, rather than only the connection being made
+			response.getCode();
+		} catch (IOException | RuntimeException e) {
+			stats.recordFailure();
+			//The connection has to be given back even if there's nothing to read from it
+			if (response != null) closeQuietly(response);
+			throw e;
+		}
+
+		stats.recordResponse(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return response;
+	}
+
+	private void attempt(URL url, Map<String, String> headers, DownloadStats stats, CompletableFuture<DownloadResponse> result, AtomicInteger running, List<IOException> failures, boolean hedge) {
+		try {
+			DownloadResponse response = request(url, headers, stats);
+
+			if (result.complete(response)) {
+				if (hedge) stats.recordHedgeWin();
+			} else {
+				//Either the other request got there first, or nobody is waiting any more
+				closeQuietly(response);
+			}
+		} catch (IOException e) {
+			synchronized (failures) {
+				failures.add(e);
+			}
+
+			if (running.decrementAndGet() == 0) {
+				IOException failure;
+				synchronized (failures) {
+					failure = failures.get(0);
+					for (int i = 1; i < failures.size(); i++) failure.addSuppressed(failures.get(i));
+				}
+				result.completeExceptionally(failure);
+			}
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	private static void closeQuietly(DownloadResponse response) {
+		try {
+			response.close();
+		} catch (IOException e) {
+			//Nothing more to do with it anyway
+		}
+	}
+}
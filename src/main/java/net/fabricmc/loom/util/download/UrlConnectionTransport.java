@@ -0,0 +1,209 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A {@link DownloadTransport} using the JDK's {@link HttpURLConnection}
+ *
+ * <p>The JDK keeps idle connections open per host so long as each response is fully read and closed rather than disconnected,
+ * which {@link DownloadResponse#close()} takes care of. How many requests are open to a host at once is bounded by the transport
+ * itself, so with enough idle connections kept by the JDK (5 by default) the same few connections keep being reused.
+ */
+public class UrlConnectionTransport implements DownloadTransport {
+	/** How much of an unread body we'll read through to keep a connection alive, rather than just dropping it */
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	private final int maxConnectionsPerHost;
+	private final int connectTimeout, readTimeout;
+	private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a transport which doesn't limit the connections per host, and leaves the timeouts as the JDK's defaults
+	 */
+	public UrlConnectionTransport() {
+		maxConnectionsPerHost = Integer.MAX_VALUE;
+		connectTimeout = readTimeout = 0;
+	}
+
+	public UrlConnectionTransport(int maxConnectionsPerHost) {
+		this(maxConnectionsPerHost, 0, 0);
+	}
+
+	/**
+	 * @param maxConnectionsPerHost How many requests to have open to a single host at once
+	 * @param connectTimeout How long to wait for a connection to be made in milliseconds, or <code>0</code> to wait forever
+	 * @param readTimeout How long to wait for more data from an open connection in milliseconds, or <code>0</code> to wait forever
+	 */
+	public UrlConnectionTransport(int maxConnectionsPerHost, int connectTimeout, int readTimeout) {
+		if (maxConnectionsPerHost < 1) throw new IllegalArgumentException("Need at least one connection per host, got " + maxConnectionsPerHost);
+		if (connectTimeout < 0 || readTimeout < 0) throw new IllegalArgumentException("Timeouts can't be negative, got " + connectTimeout + " and " + readTimeout);
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public DownloadResponse get(URL url, Map<String, String> headers) throws IOException {
+		Semaphore permits = hostPermits.computeIfAbsent(url.getProtocol() + "://" + url.getAuthority(), host -> new Semaphore(maxConnectionsPerHost));
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a connection to " + url.getHost());
+		}
+
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setUseCaches(false);
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			}
+
+			//Try make the connection, it will hang here if the connection is bad
+			connection.connect();
+			return new Response(connection, permits);
+		} catch (IOException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private static class Response implements DownloadResponse {
+		private final HttpURLConnection connection;
+		private Semaphore permits;
+		private InputStream body;
+
+		Response(HttpURLConnection connection, Semaphore permits) {
+			this.connection = connection;
+			this.permits = permits;
+		}
+
+		@Override
+		public int getCode() throws IOException {
+			return connection.getResponseCode();
+		}
+
+		@Override
+		public String getMessage() throws IOException {
+			return connection.getResponseMessage();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return connection.getHeaderField(name);
+		}
+
+		@Override
+		public long getDateHeader(String name, long fallback) {
+			return connection.getHeaderFieldDate(name, fallback);
+		}
+
+		@Override
+		public long getContentLength() {
+			return connection.getContentLengthLong();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null) {
+				InputStream stream = connection.getInputStream();
+
+				//We always ask for gzip, but it's up to the server whether we actually get it
+				if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+					stream = new GZIPInputStream(stream);
+				}
+
+				body = stream;
+			}
+
+			return body;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				drain();
+			} finally {
+				//Only give the permit back once, however many times the response is closed
+				if (permits != null) {
+					permits.release();
+					permits = null;
+				}
+			}
+		}
+
+		private void drain() throws IOException {
+			InputStream stream = body;
+
+			if (stream == null) {
+				//Nothing has been read yet, the body might still be an error page which needs clearing for the connection to be reused
+				stream = connection.getErrorStream();
+
+				if (stream == null && getCode() < 400) {
+					try {
+						stream = connection.getInputStream();
+					} catch (IOException e) {
+						stream = null;
+					}
+				}
+			}
+
+			if (stream != null) {
+				try {
+					byte[] buffer = new byte[8192];
+					int drained = 0;
+
+					int read;
+					while (drained < MAX_DRAIN && (read = stream.read(buffer)) >= 0) {
+						drained += read;
+					}
+
+					if (drained >= MAX_DRAIN) {
+						//Not worth reading any further just to save the connection
+						connection.disconnect();
+					}
+				} catch (IOException e) {
+					//Either the body has already been read and closed, or the connection is broken and won't be reused anyway
+				} finally {
+					stream.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import static net.fabricmc.loom.util.zip.ZipIndex.CENTRAL_HEADER;
+import static net.fabricmc.loom.util.zip.ZipIndex.CENTRAL_HEADER_SIZE;
+import static net.fabricmc.loom.util.zip.ZipIndex.DEFLATED;
+import static net.fabricmc.loom.util.zip.ZipIndex.END_HEADER;
+import static net.fabricmc.loom.util.zip.ZipIndex.END_HEADER_SIZE;
+import static net.fabricmc.loom.util.zip.ZipIndex.LOCAL_HEADER;
+import static net.fabricmc.loom.util.zip.ZipIndex.LOCAL_HEADER_SIZE;
+import static net.fabricmc.loom.util.zip.ZipIndex.STORED;
+
+/**
+ * Writes a zip whose entries can either be compressed fresh, or copied as they are from a {@link ZipIndex}
+ *
+ * <p>Entries are compressed by the thread adding them, or ahead of time with {@link #prepare(String, byte[], int)}, so can
+ * be added from several threads at once with only the writing itself done one at a time. As with {@link ZipIndex} there
+ * is no zip64 support.
+ */
+public class RawZipWriter implements Closeable {
+	/** The DOS date of 1980-01-01, the earliest time a zip can hold */
+	public static final int EPOCH = (1 << 21) | (1 << 16);
+	/** Marks the name as UTF-8 */
+	private static final int UTF8_FLAG = 0x800;
+
+	private static class Written {
+		final byte[] name;
+		final int method, dosTime;
+		final long crc, compressedSize, size, offset;
+
+		Written(byte[] name, int method, int dosTime, long crc, long compressedSize, long size, long offset) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+
+	private final FileChannel out;
+	private final int level;
+	private final List<Written> written = new ArrayList<>();
+	private final Set<String> names = new HashSet<>();
+	private boolean closed;
+
+	/**
+	 * @param output The zip to write
+	 * @param level The {@link Deflater} level to compress new entries with, {@link Deflater#NO_COMPRESSION} stores them
+	 *
+	 * @throws IOException If the output can't be opened
+	 */
+	public RawZipWriter(Path output, int level) throws IOException {
+		out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.level = level;
+	}
+
+	/**
+	 * An entry which has been compressed ready to be written
+	 */
+	public static class Prepared {
+		final String name;
+		final int method, dosTime;
+		final long crc, size;
+		final byte[] data;
+
+		Prepared(String name, int method, int dosTime, long crc, long size, byte[] data) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Compress the given entry ready to be written, which can be done by any thread at the same time as others
+	 *
+	 * @param name The name of the entry
+	 * @param data The uncompressed contents of the entry
+	 * @param dosTime The modification time of the entry in DOS format
+	 *
+	 * @return The compressed entry to pass to {@link #write(Prepared)}
+	 */
+	public Prepared prepare(String name, byte[] data, int dosTime) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		if (level == Deflater.NO_COMPRESSION) {
+			return new Prepared(name, STORED, dosTime, crc.getValue(), data.length, data);
+		}
+
+		Deflater deflater = new Deflater(level, true);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				compressed.write(buffer, 0, length);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		return new Prepared(name, DEFLATED, dosTime, crc.getValue(), data.length, compressed.toByteArray());
+	}
+
+	/**
+	 * Compress and write the given entry, unless one has already been written with the same name
+	 *
+	 * @param name The name of the entry
+	 * @param data The uncompressed contents of the entry
+	 * @param dosTime The modification time of the entry in DOS format
+	 *
+	 * @return Whether the entry was written
+	 *
+	 * @throws IOException If the entry can't be written
+	 */
+	public boolean write(String name, byte[] data, int dosTime) throws IOException {
+		return write(prepare(name, data, dosTime));
+	}
+
+	/**
+	 * Write the given compressed entry, unless one has already been written with the same name
+	 *
+	 * @param entry The entry to write
+	 *
+	 * @return Whether the entry was written
+	 *
+	 * @throws IOException If the entry can't be written
+	 */
+	public synchronized boolean write(Prepared entry) throws IOException {
+		if (!names.add(entry.name)) return false;
+
+		byte[] rawName = entry.name.getBytes(StandardCharsets.UTF_8);
+		long offset = startEntry(rawName, entry.method, entry.dosTime, entry.crc, entry.data.length, entry.size);
+		writeFully(ByteBuffer.wrap(entry.data));
+
+		written.add(new Written(rawName, entry.method, entry.dosTime, entry.crc, entry.data.length, entry.size, offset));
+		return true;
+	}
+
+	/**
+	 * Write an empty directory entry, unless one has already been written with the same name
+	 *
+	 * @param name The name of the directory, ending with <code>/</code>
+	 * @param dosTime The modification time of the directory in DOS format
+	 *
+	 * @return Whether the directory was written
+	 *
+	 * @throws IOException If the directory can't be written
+	 */
+	public synchronized boolean writeDirectory(String name, int dosTime) throws IOException {
+		if (!name.endsWith("/")) throw new IllegalArgumentException("Directory name must end with /, got " + name);
+		return write(new Prepared(name, STORED, dosTime, 0, 0, new byte[0]));
+	}
+
+	/**
+	 * Copy the given entry across without recompressing it, unless one has already been written with the same name
+	 *
+	 * @param source The zip the entry is from
+	 * @param entry The entry to copy
+	 *
+	 * @return Whether the entry was copied
+	 *
+	 * @throws IOException If the entry can't be copied
+	 */
+	public synchronized boolean copy(ZipIndex source, ZipIndex.Entry entry) throws IOException {
+		if (!names.add(entry.name)) return false;
+
+		byte[] rawName = entry.name.getBytes(StandardCharsets.UTF_8);
+		long offset = startEntry(rawName, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size);
+		source.transferRaw(entry, out);
+
+		written.add(new Written(rawName, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, offset));
+		return true;
+	}
+
+	private long startEntry(byte[] name, int method, int dosTime, long crc, long compressedSize, long size) throws IOException {
+		ensureOpen();
+		if (compressedSize > 0xFFFFFFFEL || size > 0xFFFFFFFEL) throw new ZipException("Entry " + new String(name, StandardCharsets.UTF_8) + " is too large without zip64");
+
+		long offset = out.position();
+		if (offset > 0xFFFFFFFEL) throw new ZipException("Zip is too large without zip64");
+
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER);
+		header.putShort((short) (method == DEFLATED ? 20 : 10)); //Version needed
+		header.putShort((short) UTF8_FLAG);
+		header.putShort((short) method);
+		header.putInt(dosTime);
+		header.putInt((int) crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) name.length);
+		header.putShort((short) 0); //Extra length
+		header.put(name);
+
+		header.flip();
+		writeFully(header);
+		return offset;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("Zip has already been closed");
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		closed = true;
+
+		try {
+			if (written.size() > 0xFFFF) throw new ZipException("Too many entries (" + written.size() + ") without zip64");
+			long directoryOffset = out.position();
+
+			for (Written entry : written) {
+				ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(CENTRAL_HEADER);
+				header.putShort((short) 20); //Version made by
+				header.putShort((short) (entry.method == DEFLATED ? 20 : 10)); //Version needed
+				header.putShort((short) UTF8_FLAG);
+				header.putShort((short) entry.method);
+				header.putInt(entry.dosTime);
+				header.putInt((int) entry.crc);
+				header.putInt((int) entry.compressedSize);
+				header.putInt((int) entry.size);
+				header.putShort((short) entry.name.length);
+				header.putShort((short) 0); //Extra length
+				header.putShort((short) 0); //Comment length
+				header.putShort((short) 0); //Disk number
+				header.putShort((short) 0); //Internal attributes
+				header.putInt(0); //External attributes
+				header.putInt((int) entry.offset);
+				header.put(entry.name);
+
+				header.flip();
+				writeFully(header);
+			}
+
+			long directorySize = out.position() - directoryOffset;
+			if (directoryOffset > 0xFFFFFFFEL) throw new ZipException("Zip is too large without zip64");
+
+			ByteBuffer end = ByteBuffer.allocate(END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_HEADER);
+			end.putShort((short) 0); //Disk number
+			end.putShort((short) 0); //Disk with the central directory
+			end.putShort((short) written.size());
+			end.putShort((short) written.size());
+			end.putInt((int) directorySize);
+			end.putInt((int) directoryOffset);
+			end.putShort((short) 0); //Comment length
+
+			end.flip();
+			writeFully(end);
+		} finally {
+			out.close();
+		}
+	}
+}
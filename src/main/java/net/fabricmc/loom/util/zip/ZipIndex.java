@@ -0,0 +1,367 @@
+/*
+ * This file is part of fabric-loom, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2016, 2017, 2018 FabricMC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.fabricmc.loom.util.zip;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A read only view of a zip's central directory, which allows entries to be copied without decompressing them
+ *
+ * <p>Every entry is checked to lie within the file when the index is opened, so a truncated zip is found before anything
+ * is done with it rather than part way through. Zip64 archives are not supported, which no game or mod jar needs.
+ */
+public class ZipIndex implements Closeable {
+	static final int LOCAL_HEADER = 0x04034b50, CENTRAL_HEADER = 0x02014b50, END_HEADER = 0x06054b50;
+	static final int LOCAL_HEADER_SIZE = 30, CENTRAL_HEADER_SIZE = 46, END_HEADER_SIZE = 22;
+	static final int STORED = 0, DEFLATED = 8;
+
+	public static class Entry {
+		final String name;
+		final int method, dosTime;
+		final long crc, compressedSize, size;
+		/** Where the entry's data starts in the zip, after its local header */
+		long dataOffset;
+
+		Entry(String name, int method, int dosTime, long crc, long compressedSize, long size) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public int getDosTime() {
+			return dosTime;
+		}
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	private ZipIndex(Path path, FileChannel channel) {
+		this.path = path;
+		this.channel = channel;
+	}
+
+	/**
+	 * Open the given zip, reading its central directory and checking every entry is complete
+	 *
+	 * @param zip The zip file to open
+	 *
+	 * @return An index over the zip's entries
+	 *
+	 * @throws ZipException If the zip is truncated or otherwise malformed
+	 * @throws IOException If the zip can't be read
+	 */
+	public static ZipIndex open(Path zip) throws IOException {
+		FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ);
+
+		try {
+			ZipIndex index = new ZipIndex(zip, channel);
+			index.readCentralDirectory();
+			return index;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long length = channel.size();
+		if (length < END_HEADER_SIZE) throw new ZipException(path + " is too short to be a zip, it's probably truncated");
+
+		//The end header is followed by a comment of up to 65535 bytes, so has to be searched for backwards
+		int tailLength = (int) Math.min(length, END_HEADER_SIZE + 0xFFFF);
+		ByteBuffer tail = read(length - tailLength, tailLength);
+
+		int end = -1;
+		for (int i = tailLength - END_HEADER_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_HEADER) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) throw new ZipException("Unable to find the end of " + path + ", it's probably truncated");
+
+		int count = tail.getShort(end + 10) & 0xFFFF;
+		long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+		long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+		if (count == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			throw new ZipException(path + " is a zip64 archive which isn't supported");
+		}
+		if (directoryOffset + directorySize > length - tailLength + end) {
+			throw new ZipException("Central directory of " + path + " runs past its end, it's probably truncated");
+		}
+
+		ByteBuffer directory = read(directoryOffset, (int) directorySize);
+		for (int i = 0; i < count; i++) {
+			if (directory.remaining() < CENTRAL_HEADER_SIZE || directory.getInt(directory.position()) != CENTRAL_HEADER) {
+				throw new ZipException("Malformed central directory entry " + i + " in " + path);
+			}
+
+			int start = directory.position();
+			int method = directory.getShort(start + 10) & 0xFFFF;
+			int dosTime = directory.getInt(start + 12);
+			long crc = directory.getInt(start + 16) & 0xFFFFFFFFL;
+			long compressedSize = directory.getInt(start + 20) & 0xFFFFFFFFL;
+			long size = directory.getInt(start + 24) & 0xFFFFFFFFL;
+			int nameLength = directory.getShort(start + 28) & 0xFFFF;
+			int extraLength = directory.getShort(start + 30) & 0xFFFF;
+			int commentLength = directory.getShort(start + 32) & 0xFFFF;
+			long localOffset = directory.getInt(start + 42) & 0xFFFFFFFFL;
+
+			byte[] name = new byte[nameLength];
+			directory.position(start + CENTRAL_HEADER_SIZE);
+			directory.get(name);
+			directory.position(directory.position() + extraLength + commentLength);
+
+			if (method != STORED && method != DEFLATED) {
+				throw new ZipException("Unsupported compression method " + method + " for " + new String(name, StandardCharsets.UTF_8) + " in " + path);
+			}
+
+			Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), method, dosTime, crc, compressedSize, size);
+			entry.dataOffset = findData(entry, localOffset, directoryOffset);
+			entries.putIfAbsent(entry.name, entry);
+		}
+	}
+
+	private long findData(Entry entry, long localOffset, long directoryOffset) throws IOException {
+		if (localOffset + LOCAL_HEADER_SIZE > directoryOffset) {
+			throw new ZipException("Entry " + entry.name + " in " + path + " starts past its data, it's probably truncated");
+		}
+
+		ByteBuffer header = read(localOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER) throw new ZipException("Malformed local header for " + entry.name + " in " + path);
+
+		long dataOffset = localOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+		if (dataOffset + entry.compressedSize > directoryOffset) {
+			throw new ZipException("Entry " + entry.name + " in " + path + " runs past its data, it's probably truncated");
+		}
+
+		return dataOffset;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new ZipException("Unexpected end of " + path + ", it's probably truncated");
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public Entry get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Read and decompress the given entry, checking its CRC
+	 *
+	 * @param entry An entry from this index
+	 *
+	 * @return The uncompressed contents of the entry
+	 *
+	 * @throws IOException If the entry can't be read or is corrupt
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		if (entry.size > Integer.MAX_VALUE - 8) throw new ZipException(entry.name + " in " + path + " is too large to read into memory");
+
+		ByteBuffer raw = read(entry.dataOffset, (int) entry.compressedSize);
+		byte[] out;
+
+		if (entry.method == STORED) {
+			out = raw.array();
+		} else {
+			out = new byte[(int) entry.size];
+			Inflater inflater = new Inflater(true);
+
+			try {
+				inflater.setInput(raw.array());
+
+				int read = 0;
+				while (read < out.length && !inflater.finished()) {
+					int inflated = inflater.inflate(out, read, out.length - read);
+					if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+					read += inflated;
+				}
+
+				if (read != out.length) throw new ZipException("Expected " + out.length + " bytes from " + entry.name + " in " + path + " but got " + read);
+			} catch (DataFormatException e) {
+				throw new ZipException("Corrupt data for " + entry.name + " in " + path + ": " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(out);
+		if (crc.getValue() != entry.crc) throw new ZipException("CRC mismatch for " + entry.name + " in " + path);
+
+		return out;
+	}
+
+	/**
+	 * Open a stream of the given entry's contents, which are decompressed as they are read rather than all at once
+	 *
+	 * <p>The entry's CRC is checked once the end of the stream is reached.
+	 *
+	 * @param entry An entry from this index
+	 *
+	 * @return A stream of the uncompressed contents of the entry
+	 */
+	public InputStream openStream(Entry entry) {
+		InputStream raw = new InputStream() {
+			private long position = entry.dataOffset;
+			private final long end = entry.dataOffset + entry.compressedSize;
+			//Inflating without the zlib wrapper can need an extra byte past the end of the data, as ZipFile also gives
+			private boolean padded = entry.method != DEFLATED;
+
+			@Override
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				if (length == 0) return 0;
+				if (position >= end) {
+					if (padded) return -1;
+
+					padded = true;
+					buffer[offset] = 0;
+					return 1;
+				}
+
+				int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, end - position)), position);
+				if (read < 0) throw new ZipException("Unexpected end of " + path + " reading " + entry.name);
+
+				position += read;
+				return read;
+			}
+		};
+
+		CheckedInputStream checked = new CheckedInputStream(entry.method == DEFLATED ? new InflaterInputStream(raw, new Inflater(true)) {
+			@Override
+			public void close() throws IOException {
+				//Passing an Inflater in means closing doesn't end it
+				super.close();
+				inf.end();
+			}
+		} : raw, new CRC32());
+
+		return new FilterInputStream(checked) {
+			@Override
+			public int read() throws IOException {
+				return check(super.read());
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				return check(super.read(buffer, offset, length));
+			}
+
+			private int check(int read) throws IOException {
+				if (read < 0 && checked.getChecksum().getValue() != entry.crc) throw new ZipException("CRC mismatch for " + entry.name + " in " + path);
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * Copy the given entry's still compressed data to the given channel
+	 *
+	 * @param entry An entry from this index
+	 * @param to The channel to write the data to
+	 *
+	 * @throws IOException If the data can't be copied
+	 */
+	public void transferRaw(Entry entry, WritableByteChannel to) throws IOException {
+		long position = entry.dataOffset, remaining = entry.compressedSize;
+
+		while (remaining > 0) {
+			long copied = channel.transferTo(position, remaining, to);
+			if (copied <= 0) throw new ZipException("Unexpected end of " + path + " copying " + entry.name);
+
+			position += copied;
+			remaining -= copied;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
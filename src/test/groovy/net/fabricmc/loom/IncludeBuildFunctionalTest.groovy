@@ -0,0 +1,75 @@
+package net.fabricmc.loom
+
+import groovy.json.JsonSlurper
+import org.gradle.testkit.runner.GradleRunner
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.jar.JarFile
+
+import static net.fabricmc.loom.BuildUtils.*
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class IncludeBuildFunctionalTest extends Specification {
+	@Rule
+	TemporaryFolder testProjectDir = new TemporaryFolder()
+	File settingsFile
+	File buildFile
+	File propsFile
+	File modJsonFile
+	File modExampleFile
+
+	def setup() {
+		settingsFile = testProjectDir.newFile('settings.gradle')
+		buildFile = testProjectDir.newFile('build.gradle')
+		propsFile = testProjectDir.newFile('gradle.properties')
+
+		testProjectDir.newFolder("src", "main", "resources")
+		modJsonFile = testProjectDir.newFile('src/main/resources/fabric.mod.json')
+
+		testProjectDir.newFolder("src", "main", "java", "net", "fabricmc", "example")
+		modExampleFile = testProjectDir.newFile("src/main/java/net/fabricmc/example/ExampleMod.java")
+	}
+
+	@Unroll
+	def "included jar is nested in the remapped jar using Minecraft #mcVersion"() {
+		given:
+		settingsFile << genSettingsFile("include-build-functional-test")
+		propsFile << genPropsFile(mcVersion, yarnVersion, loaderVersion, fabricVersion)
+		buildFile << genBuildFile()
+		buildFile << """
+dependencies {
+	include "org.ow2.asm:asm:7.1"
+}
+"""
+		modJsonFile << genModJsonFile()
+		modExampleFile << genModJavaFile()
+
+		when:
+		def result = GradleRunner.create()
+				.withProjectDir(testProjectDir.root)
+				.withArguments('build')
+				.withPluginClasspath()
+				.withGradleVersion("5.1.1")
+				.build()
+
+		then:
+		result.task(":build").outcome == SUCCESS
+
+		new JarFile(new File(testProjectDir.root, 'build/libs/fabric-example-mod-1.0.0.jar')).withCloseable { jar ->
+			def modJson = jar.getInputStream(jar.getEntry('fabric.mod.json')).withCloseable { new JsonSlurper().parse(it) }
+
+			assert jar.manifest != null
+			assert jar.getEntry('META-INF/jars/asm-7.1.jar') != null
+			assert jar.getEntry('net/fabricmc/example/ExampleMod.class') != null
+			assert modJson.jars*.file == ['META-INF/jars/asm-7.1.jar']
+			true
+		}
+
+		where:
+		mcVersion | yarnVersion      | loaderVersion     | fabricVersion
+		'1.14.2'  | '1.14.2+build.7' | '0.4.8+build.155' | '0.3.0+build.184'
+	}
+}
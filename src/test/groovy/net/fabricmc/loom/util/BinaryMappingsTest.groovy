@@ -0,0 +1,105 @@
+package net.fabricmc.loom.util
+
+import net.fabricmc.mappings.Mappings
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class BinaryMappingsTest extends Specification {
+	@Rule
+	TemporaryFolder testDir = new TemporaryFolder()
+	File tiny
+	File binary
+
+	static final String MAPPINGS = '''v1\tofficial\tintermediary\tnamed
+CLASS\ta\tnet/minecraft/class_1\tnet/minecraft/Foo
+CLASS\tb\tnet/minecraft/class_2\tnet/minecraft/Bar
+CLASS\tc\tnet/minecraft/class_3\tnet/minecraft/class_3
+FIELD\ta\tI\ta\tfield_1\tcount
+FIELD\ta\tLb;\tb\tfield_2\tbar
+METHOD\ta\t(Lb;)V\ta\tmethod_1\tsetBar
+METHOD\tb\t()La;\ta\tmethod_2\tgetFoo
+METHOD\tb\t(Lc;[La;)Lc;\tb\tmethod_3\twithÜnicode
+'''
+
+	def setup() {
+		tiny = testDir.newFile('mappings.tiny')
+		binary = new File(testDir.root, 'mappings.tiny.bin')
+		tiny.setText(MAPPINGS, 'UTF-8')
+	}
+
+	def "binary copy loads the same as the Tiny file"() {
+		given:
+		Mappings parsed = parse(tiny)
+
+		when:
+		Mappings first = BinaryMappings.load(tiny, binary)
+
+		then:
+		binary.exists()
+		describe(first) == describe(parsed)
+
+		when:
+		long written = binary.lastModified()
+		Mappings second = MappingsSource.fromTiny(tiny, binary).load()
+
+		then:
+		//Loaded from the existing copy, rather than the text being read again
+		binary.lastModified() == written
+		describe(second) == describe(parsed)
+	}
+
+	def "written binary copy matches the mappings it was written from"() {
+		given:
+		Mappings parsed = parse(tiny)
+
+		when:
+		BinaryMappings.write(parsed, tiny, binary)
+
+		then:
+		describe(BinaryMappings.load(tiny, binary)) == describe(parsed)
+	}
+
+	def "binary copy is made again when the Tiny file changes"() {
+		given:
+		BinaryMappings.load(tiny, binary)
+
+		when:
+		tiny.setText(MAPPINGS.replace('setBar', 'changeBar'), 'UTF-8')
+		tiny.setLastModified(tiny.lastModified() + 2000)
+		Mappings reloaded = BinaryMappings.load(tiny, binary)
+
+		then:
+		describe(reloaded) == describe(parse(tiny))
+		describe(reloaded).any { it.contains('changeBar') }
+	}
+
+	def "corrupt binary copy is made again"() {
+		given:
+		BinaryMappings.load(tiny, binary)
+		binary.bytes = Arrays.copyOf(binary.bytes, 40)
+
+		when:
+		Mappings reloaded = BinaryMappings.load(tiny, binary)
+
+		then:
+		describe(reloaded) == describe(parse(tiny))
+	}
+
+	private static Mappings parse(File tiny) {
+		return MappingsSource.load(tiny.bytes)
+	}
+
+	private static List<String> describe(Mappings mappings) {
+		List<String> out = []
+
+		for (String namespace : mappings.namespaces) {
+			mappings.classEntries.each { out << "class $namespace ${it.get(namespace)}".toString() }
+			mappings.fieldEntries.each { out << "field $namespace ${it.get(namespace).owner} ${it.get(namespace).name} ${it.get(namespace).desc}".toString() }
+			mappings.methodEntries.each { out << "method $namespace ${it.get(namespace).owner} ${it.get(namespace).name} ${it.get(namespace).desc}".toString() }
+		}
+
+		//The order of the namespaces matters, but not the order of the entries
+		return ['namespaces ' + mappings.namespaces.join(' ')] + out.sort()
+	}
+}
@@ -0,0 +1,186 @@
+package net.fabricmc.loom.util
+
+import net.fabricmc.loom.util.download.DownloadResponse
+import net.fabricmc.loom.util.download.DownloadTransport
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.security.MessageDigest
+
+class DownloadUtilTest extends Specification {
+	@Rule
+	TemporaryFolder testDir = new TemporaryFolder()
+
+	static final URL URL = new URL('https://example.com/file.jar')
+	static final Logger LOGGER = Logging.getLogger(DownloadUtilTest)
+	static final byte[] DATA = new byte[10_000]
+
+	static {
+		new Random(42).nextBytes(DATA)
+	}
+
+	DownloadTransport originalTransport
+	List<Map<String, String>> requests = []
+	List<Closure<DownloadResponse>> responses = []
+
+	def setup() {
+		originalTransport = DownloadUtil.getTransport()
+		DownloadUtil.setTransport({ URL url, Map<String, String> headers ->
+			requests << headers
+			return responses[requests.size() - 1](headers)
+		} as DownloadTransport)
+	}
+
+	def cleanup() {
+		DownloadUtil.setTransport(originalTransport)
+	}
+
+	def "interrupted download is resumed from where it stopped"() {
+		given:
+		File file = new File(testDir.root, 'file.jar')
+		responses << { headers ->
+			//Drops the connection part way through the body
+			InputStream body = new SequenceInputStream(new ByteArrayInputStream(DATA, 0, 4000), new InputStream() {
+				@Override
+				int read() throws IOException {
+					throw new IOException('Connection reset')
+				}
+			})
+			return new Response(200, [ETag: '"abc"'], DATA.length, body)
+		}
+		responses << { headers ->
+			return new Response(206, [ETag: '"abc"', 'Content-Range': "bytes 4000-${DATA.length - 1}/${DATA.length}".toString()], DATA.length - 4000, new ByteArrayInputStream(DATA, 4000, DATA.length - 4000))
+		}
+
+		when:
+		DownloadUtil.downloadIfChanged(URL, file, sha1(DATA), LOGGER, true)
+
+		then:
+		requests.size() == 2
+		requests[1]['Range'] == 'bytes=4000-'
+		requests[1]['If-Range'] == '"abc"'
+		requests[1]['Accept-Encoding'] == 'identity'
+		file.bytes == DATA
+		!new File(testDir.root, 'file.jar.part').exists()
+	}
+
+	def "download which never matches the hash fails"() {
+		given:
+		File file = new File(testDir.root, 'file.jar')
+		byte[] wrong = Arrays.copyOf(DATA, DATA.length)
+		wrong[1234] = (byte) (wrong[1234] ^ 1)
+		3.times {
+			responses << { headers -> new Response(200, [ETag: '"abc"'], wrong.length, new ByteArrayInputStream(wrong)) }
+		}
+
+		when:
+		DownloadUtil.downloadIfChanged(URL, file, sha1(DATA), LOGGER, true)
+
+		then:
+		IOException e = thrown()
+		e.message.contains('rather than ' + sha1(DATA))
+		requests.size() == 3
+		//Nothing from any of the attempts is resumed from, or left behind
+		requests.every { !it.containsKey('Range') }
+		!file.exists()
+		!new File(testDir.root, 'file.jar.part').exists()
+	}
+
+	def "download without a hash is skipped when not modified"() {
+		given:
+		File file = new File(testDir.root, 'file.jar')
+		responses << { headers -> new Response(200, [ETag: '"abc"'], DATA.length, new ByteArrayInputStream(DATA)) }
+		responses << { headers -> new Response(304, [:], -1, new ByteArrayInputStream(new byte[0])) }
+
+		when:
+		DownloadUtil.downloadIfChanged(URL, file, LOGGER, true)
+		DownloadUtil.downloadIfChanged(URL, file, LOGGER, true)
+
+		then:
+		requests.size() == 2
+		requests[1]['If-None-Match'] == '"abc"'
+		file.bytes == DATA
+	}
+
+	def "wrong file is downloaded again despite the server saying it's not modified"() {
+		given:
+		File file = new File(testDir.root, 'file.jar')
+		responses << { headers -> new Response(200, [ETag: '"abc"'], DATA.length, new ByteArrayInputStream(DATA)) }
+		responses << { headers ->
+			//The server still has the same file, so would say it's not changed if asked
+			if (headers['If-None-Match'] == '"abc"') return new Response(304, [:], -1, new ByteArrayInputStream(new byte[0]))
+			return new Response(200, [ETag: '"abc"'], DATA.length, new ByteArrayInputStream(DATA))
+		}
+		DownloadUtil.downloadIfChanged(URL, file, LOGGER, true)
+
+		//Damaged on disk, but still the size it was downloaded as
+		byte[] damaged = file.bytes
+		damaged[1234] = (byte) (damaged[1234] ^ 1)
+		file.bytes = damaged
+
+		when:
+		DownloadUtil.downloadIfChanged(URL, file, sha1(DATA), LOGGER, true)
+
+		then:
+		requests.size() == 2
+		!requests[1].containsKey('If-None-Match')
+		!requests[1].containsKey('If-Modified-Since')
+		file.bytes == DATA
+	}
+
+	private static String sha1(byte[] data) {
+		return Checksum.toHex(MessageDigest.getInstance('SHA-1').digest(data))
+	}
+
+	private static class Response implements DownloadResponse {
+		final int code
+		final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER)
+		final long contentLength
+		final InputStream body
+
+		Response(int code, Map<String, String> headers, long contentLength, InputStream body) {
+			this.code = code
+			this.headers.putAll(headers)
+			this.contentLength = contentLength
+			this.body = body
+		}
+
+		@Override
+		int getCode() {
+			return code
+		}
+
+		@Override
+		String getMessage() {
+			return 'Test'
+		}
+
+		@Override
+		String getHeader(String name) {
+			return headers[name]
+		}
+
+		@Override
+		long getDateHeader(String name, long fallback) {
+			return fallback
+		}
+
+		@Override
+		long getContentLength() {
+			return contentLength
+		}
+
+		@Override
+		InputStream getBody() {
+			return body
+		}
+
+		@Override
+		void close() {
+			body.close()
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package net.fabricmc.loom.util
+
+import net.fabricmc.stitch.merge.JarMerger
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class MinecraftJarMergerTest extends Specification {
+	@Rule
+	TemporaryFolder testDir = new TemporaryFolder()
+	File client
+	File server
+
+	def setup() {
+		client = writeJar('client.jar', [
+				'net/minecraft/Shared.class': makeClass('net/minecraft/Shared', 'shared'),
+				'net/minecraft/Sided.class': makeClass('net/minecraft/Sided', 'shared', 'render'),
+				'net/minecraft/client/Main.class': makeClass('net/minecraft/client/Main', 'main'),
+				'a.class': makeClass('a', 'run'),
+				'assets/minecraft/lang/en_us.json': '{"a": "b"}'.bytes,
+				'data.txt': 'client'.bytes,
+				'META-INF/MANIFEST.MF': 'Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n\nName: a.class\nSHA-256-Digest: abc=\n'.bytes,
+				'META-INF/MOJANGCS.SF': 'Signature-Version: 1.0\n'.bytes,
+				'META-INF/MOJANGCS.RSA': [1, 2, 3] as byte[]
+		])
+		server = writeJar('server.jar', [
+				'net/minecraft/Shared.class': makeClass('net/minecraft/Shared', 'shared'),
+				'net/minecraft/Sided.class': makeClass('net/minecraft/Sided', 'shared', 'tick'),
+				'net/minecraft/server/Main.class': makeClass('net/minecraft/server/Main', 'main'),
+				'b.class': makeClass('b', 'run'),
+				//Libraries the server bundles, which shouldn't make it into the merged jar
+				'com/google/Lib.class': makeClass('com/google/Lib', 'help'),
+				'data.txt': 'server'.bytes,
+				'server.properties': 'motd=Hello'.bytes,
+				'META-INF/MANIFEST.MF': 'Manifest-Version: 1.0\nMain-Class: net.minecraft.server.Main\n'.bytes
+		])
+	}
+
+	def "merged jar matches Stitch's"() {
+		given:
+		File expected = new File(testDir.root, 'stitch.jar')
+		File merged = new File(testDir.root, 'merged.jar')
+
+		when:
+		new JarMerger(client, server, expected).withCloseable { merger ->
+			merger.enableSyntheticParamsOffset()
+			merger.merge()
+		}
+		MinecraftJarMerger.merge(client, server, merged, 2, Deflater.DEFAULT_COMPRESSION)
+
+		then:
+		Map<String, byte[]> expectedEntries = readJar(expected)
+		Map<String, byte[]> mergedEntries = readJar(merged)
+
+		mergedEntries.keySet() == expectedEntries.keySet()
+		!mergedEntries.containsKey('com/google/Lib.class')
+		mergedEntries['data.txt'] == 'client'.bytes
+		//The signatures are dropped, and the manifest replaced with one without them
+		!mergedEntries.keySet().any { it.endsWith('.SF') || it.endsWith('.RSA') }
+		new String(mergedEntries['META-INF/MANIFEST.MF'], 'UTF-8') == new String(expectedEntries['META-INF/MANIFEST.MF'], 'UTF-8')
+		mergedEntries.every { name, data ->
+			name.endsWith('.class') ? canonicalise(data) == canonicalise(expectedEntries[name]) : data == expectedEntries[name]
+		}
+	}
+
+	def "merged jar is the same whichever number of threads are used"() {
+		given:
+		File single = new File(testDir.root, 'single.jar')
+		File parallel = new File(testDir.root, 'parallel.jar')
+
+		when:
+		MinecraftJarMerger.merge(client, server, single, 1, Deflater.DEFAULT_COMPRESSION)
+		MinecraftJarMerger.merge(client, server, parallel, 4, Deflater.DEFAULT_COMPRESSION)
+
+		then:
+		single.bytes == parallel.bytes
+		!new ZipFile(single).withCloseable { it.entries().collect { it.name } }.any { it.endsWith('.SF') || it.endsWith('.RSA') }
+	}
+
+	private static byte[] makeClass(String name, String... methods) {
+		ClassWriter writer = new ClassWriter(0)
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, 'java/lang/Object', null)
+		writer.visitField(Opcodes.ACC_PRIVATE, 'value', 'I', null, null).visitEnd()
+
+		for (String method : methods) {
+			MethodVisitor visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, method, '()V', null, null)
+			visitor.visitCode()
+			visitor.visitInsn(Opcodes.RETURN)
+			visitor.visitMaxs(0, 1)
+			visitor.visitEnd()
+		}
+
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+
+	private static byte[] canonicalise(byte[] data) {
+		//Rewritten so the constant pool is in the order it's visited, and classes which are the same compare the same
+		ClassWriter writer = new ClassWriter(0)
+		new ClassReader(data).accept(writer, 0)
+		return writer.toByteArray()
+	}
+
+	private File writeJar(String name, Map<String, byte[]> entries) {
+		File jar = testDir.newFile(name)
+
+		new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+			entries.each { entry, data ->
+				out.putNextEntry(new ZipEntry(entry))
+				out.write(data)
+				out.closeEntry()
+			}
+		}
+
+		return jar
+	}
+
+	private static Map<String, byte[]> readJar(File jar) {
+		Map<String, byte[]> out = [:]
+
+		new ZipFile(jar).withCloseable { zip ->
+			zip.entries().each { entry ->
+				if (!entry.directory) {
+					out[entry.name] = zip.getInputStream(entry).withCloseable { it.bytes }
+				}
+			}
+		}
+
+		return out
+	}
+}
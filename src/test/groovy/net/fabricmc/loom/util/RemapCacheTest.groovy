@@ -0,0 +1,150 @@
+package net.fabricmc.loom.util
+
+import net.fabricmc.mappings.ClassEntry
+import net.fabricmc.mappings.EntryTriple
+import net.fabricmc.mappings.FieldEntry
+import net.fabricmc.mappings.Mappings
+import net.fabricmc.mappings.MethodEntry
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.TimeUnit
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class RemapCacheTest extends Specification {
+	@Rule
+	TemporaryFolder testDir = new TemporaryFolder()
+
+	def "keys only change for classes affected by a mappings change"() {
+		given:
+		//a calls b, c extends b, d has nothing to do with any of them
+		Path jar = writeJar([
+				a: makeClass('a', 'java/lang/Object') { method(it, 'run', '(Lb;)V') },
+				b: makeClass('b', 'java/lang/Object') { method(it, 'go', '()V') },
+				c: makeClass('c', 'b'),
+				d: makeClass('d', 'java/lang/Object') { method(it, 'stop', '()V') }
+		])
+		RemapCache.JarClasses classes = RemapCache.scan(jar)
+
+		when:
+		Map<String, String> before = RemapCache.computeKeys(classes, mappings('go'), 'official', 'named')
+		Map<String, String> same = RemapCache.computeKeys(classes, mappings('go'), 'official', 'named')
+		Map<String, String> after = RemapCache.computeKeys(classes, mappings('goFaster'), 'official', 'named')
+
+		then:
+		before.keySet() == ['a', 'b', 'c', 'd'] as Set
+		before == same
+
+		after['a'] != before['a'] //Refers to b
+		after['b'] != before['b'] //Is b
+		after['c'] != before['c'] //Inherits from b
+		after['d'] == before['d'] //Unrelated
+	}
+
+	def "keys differ between namespaces and when a class changes"() {
+		given:
+		Path original = writeJar([b: makeClass('b', 'java/lang/Object') { method(it, 'go', '()V') }])
+		Path changed = writeJar([b: makeClass('b', 'java/lang/Object') { method(it, 'go', '()V'); method(it, 'wait', '()V') }])
+
+		when:
+		String named = RemapCache.computeKeys(RemapCache.scan(original), mappings('go'), 'official', 'named')['b']
+		String intermediary = RemapCache.computeKeys(RemapCache.scan(original), mappings('go'), 'official', 'intermediary')['b']
+		String modified = RemapCache.computeKeys(RemapCache.scan(changed), mappings('go'), 'official', 'named')['b']
+
+		then:
+		named != intermediary
+		named != modified
+	}
+
+	def "cached classes are read back and unused ones are pruned"() {
+		given:
+		File userCache = testDir.newFolder('cache')
+		RemapCache cache = new RemapCache(userCache, 'named')
+		String used = '0123456789abcdef0123456789abcdef01234567'
+		String unused = 'fedcba9876543210fedcba9876543210fedcba98'
+
+		when:
+		cache.put(used, [1, 2, 3] as byte[])
+		cache.put(unused, [4, 5, 6] as byte[])
+		age(userCache, unused, 60)
+		RemapCache.prune(userCache)
+
+		then:
+		cache.get(used) == [1, 2, 3] as byte[]
+		cache.get(unused) == null
+		cache.get('00000000000000000000000000000000000000ff') == null
+
+		when:
+		//Pruning is only done once a day, however out of date the classes are by then
+		age(userCache, used, 60)
+		RemapCache.prune(userCache)
+
+		then:
+		cache.get(used) == [1, 2, 3] as byte[]
+	}
+
+	private static void age(File userCache, String key, int days) {
+		Path file = RemapCache.getRoot(userCache).toPath().resolve('named').resolve(key.substring(0, 2)).resolve(key)
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)))
+	}
+
+	private static Mappings mappings(String goName) {
+		Map<String, Map<String, String>> classNames = [
+				a: [official: 'a', intermediary: 'net/minecraft/class_1', named: 'net/minecraft/Alpha'],
+				b: [official: 'b', intermediary: 'net/minecraft/class_2', named: 'net/minecraft/Beta'],
+				c: [official: 'c', intermediary: 'net/minecraft/class_3', named: 'net/minecraft/Gamma'],
+				d: [official: 'd', intermediary: 'net/minecraft/class_4', named: 'net/minecraft/Delta']
+		]
+		List<ClassEntry> classes = classNames.values().collect { names -> { String namespace -> names[namespace] } as ClassEntry }
+
+		List<MethodEntry> methods = [
+				{ String namespace -> new EntryTriple(classNames.b[namespace], [official: 'go', intermediary: 'method_1', named: goName][namespace], '()V') } as MethodEntry,
+				{ String namespace -> new EntryTriple(classNames.d[namespace], [official: 'stop', intermediary: 'method_2', named: 'stop'][namespace], '()V') } as MethodEntry
+		]
+
+		return [
+				getNamespaces: { ['official', 'intermediary', 'named'] },
+				getClassEntries: { classes },
+				getFieldEntries: { [] as List<FieldEntry> },
+				getMethodEntries: { methods }
+		] as Mappings
+	}
+
+	private static byte[] makeClass(String name, String superName, Closure body = {}) {
+		ClassWriter writer = new ClassWriter(0)
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null)
+		body(writer)
+		writer.visitEnd()
+		return writer.toByteArray()
+	}
+
+	private static void method(ClassWriter writer, String name, String desc) {
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, name, desc, null, null)
+		method.visitCode()
+		method.visitInsn(Opcodes.RETURN)
+		method.visitMaxs(0, 2)
+		method.visitEnd()
+	}
+
+	private Path writeJar(Map<String, byte[]> classes) {
+		File jar = testDir.newFile()
+
+		new ZipOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+			classes.each { name, data ->
+				out.putNextEntry(new ZipEntry(name + '.class'))
+				out.write(data)
+				out.closeEntry()
+			}
+		}
+
+		return jar.toPath()
+	}
+}
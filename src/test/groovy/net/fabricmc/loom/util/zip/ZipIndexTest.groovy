@@ -0,0 +1,168 @@
+package net.fabricmc.loom.util.zip
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
+
+class ZipIndexTest extends Specification {
+	@Rule
+	TemporaryFolder testDir = new TemporaryFolder()
+
+	static final byte[] TEXT = ('Hello, world! ' * 100).getBytes('UTF-8')
+	static final byte[] RANDOM = new byte[4096]
+
+	static {
+		new Random(42).nextBytes(RANDOM)
+	}
+
+	@Unroll
+	def "entries written at level #level are read back the same"() {
+		given:
+		Path zip = testDir.root.toPath().resolve('test.zip')
+
+		when:
+		new RawZipWriter(zip, level).withCloseable { out ->
+			assert out.write('a/text.txt', TEXT, RawZipWriter.EPOCH)
+			assert out.write('b/random.bin', RANDOM, RawZipWriter.EPOCH)
+			assert out.write('empty', new byte[0], RawZipWriter.EPOCH)
+			//Only the first of any duplicates is kept
+			assert !out.write('a/text.txt', new byte[1], RawZipWriter.EPOCH)
+		}
+		ZipIndex index = ZipIndex.open(zip)
+
+		then:
+		index.entries*.name == ['a/text.txt', 'b/random.bin', 'empty']
+		index.read(index.get('a/text.txt')) == TEXT
+		index.read(index.get('b/random.bin')) == RANDOM
+		index.read(index.get('empty')).length == 0
+		index.openStream(index.get('a/text.txt')).withCloseable { it.bytes } == TEXT
+		index.openStream(index.get('b/random.bin')).withCloseable { it.bytes } == RANDOM
+		index.get('b/random.bin').crc == crc(RANDOM)
+		index.get('missing') == null
+
+		//Anything else reading zips has to agree with what was written too
+		new ZipFile(zip.toFile()).withCloseable { jdk ->
+			jdk.size() == 3 && jdk.getInputStream(jdk.getEntry('a/text.txt')).bytes == TEXT && jdk.getInputStream(jdk.getEntry('b/random.bin')).bytes == RANDOM
+		}
+
+		cleanup:
+		index?.close()
+
+		where:
+		level << [Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION]
+	}
+
+	def "copied entries keep their original compressed bytes"() {
+		given:
+		Path source = testDir.root.toPath().resolve('source.zip')
+		Path copy = testDir.root.toPath().resolve('copy.zip')
+		new RawZipWriter(source, Deflater.BEST_COMPRESSION).withCloseable { out ->
+			out.write('a/text.txt', TEXT, 1234567)
+			out.write('b/random.bin', RANDOM, RawZipWriter.EPOCH)
+		}
+
+		when:
+		ZipIndex sourceIndex = ZipIndex.open(source)
+		//Written at a different level to the source, which the copy mustn't change
+		new RawZipWriter(copy, Deflater.NO_COMPRESSION).withCloseable { out ->
+			sourceIndex.entries.each { out.copy(sourceIndex, it) }
+		}
+		ZipIndex copyIndex = ZipIndex.open(copy)
+
+		then:
+		copyIndex.entries*.name == sourceIndex.entries*.name
+		copyIndex.get('a/text.txt').dosTime == 1234567
+		copyIndex.read(copyIndex.get('a/text.txt')) == TEXT
+		copyIndex.read(copyIndex.get('b/random.bin')) == RANDOM
+		Files.size(copy) == Files.size(source)
+
+		cleanup:
+		sourceIndex?.close()
+		copyIndex?.close()
+	}
+
+	def "corrupt entry data fails the CRC check"() {
+		given:
+		Path zip = testDir.root.toPath().resolve('corrupt.zip')
+		new RawZipWriter(zip, Deflater.NO_COMPRESSION).withCloseable { out ->
+			out.write('a/text.txt', TEXT, RawZipWriter.EPOCH)
+		}
+
+		//Stored, so the text is in the zip as it is and can be changed without breaking the structure around it
+		byte[] bytes = Files.readAllBytes(zip)
+		int start = indexOf(bytes, TEXT)
+		bytes[start + 10] = (byte) (bytes[start + 10] ^ 1)
+		Files.write(zip, bytes)
+
+		when:
+		ZipIndex index = ZipIndex.open(zip)
+		index.read(index.get('a/text.txt'))
+
+		then:
+		thrown ZipException
+
+		when:
+		index.openStream(index.get('a/text.txt')).withCloseable { it.bytes }
+
+		then:
+		thrown ZipException
+
+		cleanup:
+		index?.close()
+	}
+
+	@Unroll
+	def "a zip with #description is found to be truncated"() {
+		given:
+		byte[] complete = Files.readAllBytes(makeZip())
+		Path zip = testDir.root.toPath().resolve('truncated.zip')
+		Files.write(zip, Arrays.copyOf(complete, kept(complete.length) as int))
+
+		when:
+		ZipIndex.open(zip).close()
+
+		then:
+		thrown ZipException
+
+		where:
+		description                 | kept
+		'nothing left'              | { 0 }
+		'only 10 bytes left'        | { 10 }
+		'only half left'            | { it / 2 }
+		'the last 30 bytes missing' | { it - 30 }
+		'the last byte missing'     | { it - 1 }
+	}
+
+	private Path makeZip() {
+		Path zip = testDir.root.toPath().resolve('complete.zip')
+
+		new RawZipWriter(zip, Deflater.DEFAULT_COMPRESSION).withCloseable { out ->
+			out.write('a/text.txt', TEXT, RawZipWriter.EPOCH)
+			out.write('b/random.bin', RANDOM, RawZipWriter.EPOCH)
+		}
+
+		return zip
+	}
+
+	private static long crc(byte[] data) {
+		CRC32 crc = new CRC32()
+		crc.update(data)
+		return crc.value
+	}
+
+	private static int indexOf(byte[] haystack, byte[] needle) {
+		for (int i = 0; i <= haystack.length - needle.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(haystack, i, i + needle.length), needle)) return i
+		}
+
+		throw new IllegalArgumentException('Not found')
+	}
+}